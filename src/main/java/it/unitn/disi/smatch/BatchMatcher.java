@@ -0,0 +1,344 @@
+package it.unitn.disi.smatch;
+
+import it.unitn.disi.smatch.data.mappings.IContextMapping;
+import it.unitn.disi.smatch.data.trees.IContext;
+import it.unitn.disi.smatch.data.trees.INode;
+import it.unitn.disi.smatch.loaders.context.IContextLoader;
+import it.unitn.disi.smatch.oracles.ILinguisticOracle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Matches many context pairs listed in a manifest file with one match manager per config.
+ * <p/>
+ * Each manifest line contains tab-separated source, target and output file names, optionally followed by
+ * a config file name. Empty lines and lines starting with # are skipped. Relative file names are resolved
+ * against the manifest directory.
+ * <p/>
+ * Each distinct context is loaded and preprocessed once per config, sequentially, because linguistic
+ * preprocessing is not designed for concurrent use. If a cache is given, preprocessed contexts are taken from it.
+ * Then the pairs are matched on a fixed size worker pool and the per-pair wall time and the overall throughput
+ * are reported. For the same reason a match manager is used by one worker at a time: the workers share the match
+ * managers used for preprocessing and create more, up to one per worker and config, when those are busy.
+ * <p/>
+ * The match managers created for the workers share the linguistic oracles and sense matchers of the config,
+ * which are read only and are used concurrently by the runnable element matcher already: their configs are
+ * loaded again into child application contexts without these beans, so WordNet is loaded once per config
+ * and only the matchers, the solvers and the mapping factories are created per worker. The config of a match
+ * manager passed to the constructor is loaded once more for the first extra worker, because the oracles of
+ * the passed match manager are not reachable.
+ *
+ * @author agent
+ */
+public class BatchMatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchMatcher.class);
+
+    private static final String SEPARATOR = "\t";
+    private static final String COMMENT = "#";
+
+    // config file name - match manager, null key for the default manager
+    private final Map<String, IMatchManager> managers = new HashMap<>();
+    // config file name - match managers not used by any worker, null key for the default config
+    private final Map<String, Deque<IMatchManager>> idleManagers = new HashMap<>();
+    // config file name - application context with the oracles shared by the workers, null key for the default config
+    private final Map<String, GenericApplicationContext> sharedContexts = new HashMap<>();
+    // application contexts of the match managers created for the workers, closed after matching
+    private final List<GenericApplicationContext> workerContexts = new ArrayList<>();
+
+    private final String defaultConfigFileName;
+    private final OfflineCache cache;
+    private final int threads;
+
+    /**
+     * One manifest line.
+     */
+    private static class Pair {
+        final String source;
+        final String target;
+        final String output;
+        final String config;
+
+        long time;
+        int size;
+        Throwable error;
+
+        Pair(String source, String target, String output, String config) {
+            this.source = source;
+            this.target = target;
+            this.output = output;
+            this.config = config;
+        }
+    }
+
+    /**
+     * Creates a batch matcher.
+     *
+     * @param mm             match manager for pairs without config, null to create it from the config
+     * @param configFileName config file name for pairs without config, null for the default config
+     * @param cache          cache of preprocessed contexts for the config, null to preprocess always
+     * @param threads        size of the worker pool matching the pairs
+     */
+    public BatchMatcher(IMatchManager mm, String configFileName, OfflineCache cache, int threads) {
+        if (null != mm) {
+            this.managers.put(null, mm);
+        }
+        this.defaultConfigFileName = configFileName;
+        this.cache = cache;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Matches all pairs from the manifest.
+     *
+     * @param manifestFileName manifest file name
+     * @throws IOException     IOException
+     * @throws SMatchException SMatchException
+     */
+    public void match(String manifestFileName) throws IOException, SMatchException {
+        List<Pair> pairs = readManifest(manifestFileName);
+        if (log.isInfoEnabled()) {
+            log.info("Read pairs: " + pairs.size());
+        }
+
+        long start = System.currentTimeMillis();
+        // config file name + file name - preprocessed context
+        Map<String, IContext> contexts = new HashMap<>();
+        for (Pair pair : pairs) {
+            IMatchManager mm = getMatchManager(pair.config);
+            if (!(mm.getContextLoader() instanceof IContextLoader)) {
+                throw new SMatchException("To match contexts, use context loaders supporting IContextLoader: " + pair.config);
+            }
+            preprocess(mm, pair.config, pair.source, contexts);
+            preprocess(mm, pair.config, pair.target, contexts);
+        }
+        long offlineTime = System.currentTimeMillis() - start;
+        if (log.isInfoEnabled()) {
+            log.info("Preprocessed contexts: " + contexts.size() + " in " + offlineTime + " ms");
+        }
+
+        for (Map.Entry<String, IMatchManager> e : managers.entrySet()) {
+            Deque<IMatchManager> idle = new ArrayDeque<>();
+            idle.push(e.getValue());
+            idleManagers.put(e.getKey(), idle);
+        }
+
+        start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>(pairs.size());
+            for (final Pair pair : pairs) {
+                final IContext source = contexts.get(contextKey(pair.config, pair.source));
+                final IContext target = contexts.get(contextKey(pair.config, pair.target));
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        long pairStart = System.currentTimeMillis();
+                        IMatchManager mm = null;
+                        try {
+                            mm = acquireMatchManager(pair.config);
+                            IContextMapping<INode> result = mm.online(source, target);
+                            mm.renderMapping(result, pair.output);
+                            pair.size = result.size();
+                        } catch (SMatchException | RuntimeException e) {
+                            // a failed pair does not stop the others
+                            pair.error = e;
+                        } finally {
+                            if (null != mm) {
+                                releaseMatchManager(pair.config, mm);
+                            }
+                        }
+                        pair.time = System.currentTimeMillis() - pairStart;
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SMatchException("Interrupted while matching", e);
+                } catch (ExecutionException e) {
+                    throw new SMatchException(e.getCause().getClass().getSimpleName() + ": " + e.getCause().getMessage(), e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            closeWorkerContexts();
+        }
+        long onlineTime = System.currentTimeMillis() - start;
+
+        report(pairs, offlineTime, onlineTime);
+    }
+
+    private void preprocess(IMatchManager mm, String config, String fileName, Map<String, IContext> contexts) throws SMatchException {
+        String key = contextKey(config, fileName);
+        if (!contexts.containsKey(key)) {
+            long start = System.currentTimeMillis();
+            IContext context = (IContext) mm.loadContext(fileName);
+            if (null == cache) {
+                mm.offline(context);
+            } else {
+                if (null == config) {
+                    context = cache.offline(mm, defaultConfigFileName, context);
+                } else {
+                    // the cache reads the entries back with the oracle of the config
+                    ILinguisticOracle linguisticOracle = CLI.getLinguisticOracle(getSharedContext(config));
+                    context = cache.offline(mm, linguisticOracle, config, context);
+                }
+            }
+            contexts.put(key, context);
+            if (log.isDebugEnabled()) {
+                log.debug("Preprocessed " + fileName + " in " + (System.currentTimeMillis() - start) + " ms");
+            }
+        }
+    }
+
+    private static String contextKey(String config, String fileName) {
+        return config + SEPARATOR + fileName;
+    }
+
+    private IMatchManager getMatchManager(String config) {
+        IMatchManager mm = managers.get(config);
+        if (null == mm) {
+            mm = getSharedContext(config).getBean(CLI.MATCH_MANAGER_BEAN, IMatchManager.class);
+            managers.put(config, mm);
+        }
+        return mm;
+    }
+
+    private ApplicationContext getSharedContext(String config) {
+        GenericApplicationContext result = sharedContexts.get(config);
+        if (null == result) {
+            result = CLI.loadConfig(null == config ? defaultConfigFileName : config, null);
+            sharedContexts.put(config, result);
+        }
+        return result;
+    }
+
+    /**
+     * Takes a match manager no other worker uses, creating one if all are busy.
+     *
+     * @param config config file name, null for the default config
+     * @return match manager
+     */
+    private IMatchManager acquireMatchManager(String config) {
+        synchronized (idleManagers) {
+            Deque<IMatchManager> idle = idleManagers.get(config);
+            if (null != idle && !idle.isEmpty()) {
+                return idle.pop();
+            }
+            // created under the lock, because creating components concurrently is not supported either
+            if (log.isInfoEnabled()) {
+                log.info("Creating match manager for a worker: " + (null == config ? defaultConfigFileName : config));
+            }
+            GenericApplicationContext worker = CLI.loadConfig(null == config ? defaultConfigFileName : config, getSharedContext(config));
+            workerContexts.add(worker);
+            return worker.getBean(CLI.MATCH_MANAGER_BEAN, IMatchManager.class);
+        }
+    }
+
+    private void releaseMatchManager(String config, IMatchManager mm) {
+        synchronized (idleManagers) {
+            Deque<IMatchManager> idle = idleManagers.get(config);
+            if (null == idle) {
+                idle = new ArrayDeque<>();
+                idleManagers.put(config, idle);
+            }
+            idle.push(mm);
+        }
+    }
+
+    private void closeWorkerContexts() {
+        synchronized (idleManagers) {
+            for (GenericApplicationContext worker : workerContexts) {
+                worker.close();
+            }
+            workerContexts.clear();
+            idleManagers.clear();
+        }
+    }
+
+    private void report(List<Pair> pairs, long offlineTime, long onlineTime) {
+        int failed = 0;
+        long links = 0;
+        for (Pair pair : pairs) {
+            if (null == pair.error) {
+                links = links + pair.size;
+                if (log.isInfoEnabled()) {
+                    log.info(pair.source + SEPARATOR + pair.target + SEPARATOR + pair.size + " links" + SEPARATOR + pair.time + " ms");
+                }
+            } else {
+                failed++;
+                if (log.isErrorEnabled()) {
+                    log.error(pair.source + SEPARATOR + pair.target + SEPARATOR + "failed in " + pair.time + " ms", pair.error);
+                }
+            }
+        }
+
+        if (log.isInfoEnabled()) {
+            log.info("Matched pairs: " + (pairs.size() - failed) + ", failed: " + failed + ", threads: " + threads);
+            log.info("Preprocessing time: " + offlineTime + " ms, matching time: " + onlineTime + " ms");
+            if (0 < onlineTime) {
+                log.info("Throughput: " + String.format("%.2f", 1000.0 * (pairs.size() - failed) / onlineTime) + " pairs/s, "
+                        + String.format("%.2f", 1000.0 * links / onlineTime) + " links/s");
+            }
+        }
+    }
+
+    private static List<Pair> readManifest(String manifestFileName) throws IOException, SMatchException {
+        List<Pair> result = new ArrayList<>();
+        File manifest = new File(manifestFileName).getAbsoluteFile();
+        File baseDir = manifest.getParentFile();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(manifest), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            while (null != (line = in.readLine())) {
+                lineNumber++;
+                if (line.trim().isEmpty() || line.startsWith(COMMENT)) {
+                    continue;
+                }
+                String[] tokens = line.split(SEPARATOR);
+                if (tokens.length < 3 || 4 < tokens.length) {
+                    throw new SMatchException("Expected source, target, output and optionally config at line " + lineNumber + ": " + line);
+                }
+                String config = null;
+                if (4 == tokens.length) {
+                    config = resolve(baseDir, tokens[3]);
+                }
+                result.add(new Pair(resolve(baseDir, tokens[0]), resolve(baseDir, tokens[1]), resolve(baseDir, tokens[2]), config));
+            }
+        }
+        return result;
+    }
+
+    private static String resolve(File baseDir, String fileName) {
+        File file = new File(fileName.trim());
+        if (!file.isAbsolute()) {
+            file = new File(baseDir, fileName.trim());
+        }
+        return file.getPath();
+    }
+}
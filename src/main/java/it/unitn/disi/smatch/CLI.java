@@ -2,19 +2,32 @@ package it.unitn.disi.smatch;
 
 import it.unitn.disi.common.DISIException;
 import it.unitn.disi.smatch.data.mappings.IContextMapping;
+import it.unitn.disi.smatch.data.mappings.StreamingMappingFactory;
 import it.unitn.disi.smatch.data.trees.IBaseContext;
 import it.unitn.disi.smatch.data.trees.IContext;
 import it.unitn.disi.smatch.data.trees.INode;
 import it.unitn.disi.smatch.loaders.context.IContextLoader;
+import it.unitn.disi.smatch.oracles.ILinguisticOracle;
+import it.unitn.disi.smatch.oracles.ISenseMatcher;
 import it.unitn.disi.smatch.oracles.wordnet.InMemoryWordNetBinaryArray;
 import it.unitn.disi.smatch.oracles.wordnet.WordNet;
 import it.unitn.disi.smatch.renderers.context.IContextRenderer;
 import org.apache.log4j.PropertyConfigurator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
 
 /**
  * Command-line interface for S-Match.
@@ -37,6 +50,9 @@ public class CLI {
      */
     public static final String DEFAULT_CONFIG_FILE_NAME = "/it/unitn/disi/smatch/s-match.xml";
 
+    // bean name of the match manager in the config files
+    public static final String MATCH_MANAGER_BEAN = "matchManager";
+
     // config file command line key
     public static final String CONFIG_FILE_CMD_LINE_KEY = "-config=";
 
@@ -102,7 +118,44 @@ public class CLI {
      * @since 2.0.0
      */
     public static final String CMD_ALL_STEPS = "allsteps";
-    
+
+    /**
+     * Read the manifest with source, target, output and optionally config file names, one pair per line,
+     * preprocess each distinct context once, match the pairs in parallel and write the output mappings:
+     *
+     * <pre>
+     * {@code batch <manifest> [threads]}
+     * </pre>
+     *
+     * Each config is loaded once for preprocessing. Busy workers create up to one more match manager each per config,
+     * sharing its linguistic oracle.
+     *
+     * @see BatchMatcher
+     */
+    public static final String CMD_BATCH = "batch";
+
+    /**
+     * Start a daemon which keeps one match manager loaded and executes the commands above sent to the port:
+     *
+     * <pre>
+     * {@code serve <port>}
+     * </pre>
+     *
+     * Commands are sent with the {@code -server=port} option, for example
+     * {@code online <source> <target> <output> -server=port}.
+     * Send {@code shutdown} to stop the daemon.
+     */
+    public static final String CMD_SERVE = "serve";
+
+    // server port command line key
+    public static final String SERVER_PORT_CMD_LINE_KEY = "-server=";
+
+    // offline cache directory command line key
+    public static final String CACHE_DIR_CMD_LINE_KEY = "-cache=";
+
+    // locations with a scheme, such as http: or file:, but not Windows drive letters
+    private static final Pattern URL_PATTERN = Pattern.compile("[a-zA-Z][a-zA-Z0-9+.-]+:.*");
+
     // usage string
     private static final String USAGE = "Usage: MatchManager <command> <arguments> [options]\n" +
             " Commands: \n" +
@@ -113,10 +166,15 @@ public class CLI {
             " online <source> <target> <output>          read source and target files, run matching and write the output file\n" +
             " filter <source> <target> <input> <output>  read source and target files, input mapping, run filtering and write the output mapping\n" +
             " allsteps <source> <target> <output>        read source and target files, run all steps from 1 to 4 and write the output mapping\n" +            
+            " batch <manifest> [threads]                 read source, target, output [and config] from each manifest line, match the pairs in parallel\n" +
+            "                                            up to [threads] match managers per config, sharing one linguistic oracle\n" +
+            " serve <port>                               keep the match manager loaded and execute commands sent to the port\n" +
             "\n" +
             " Options: \n" +
             " -config=file.xml                           read configuration from file.xml instead of default s-match.xml\n" +
-            "                                            use -Dkey=value to supply values to ${key} placeholders in the config file\n";    
+            "                                            use -Dkey=value to supply values to ${key} placeholders in the config file\n" +
+            " -server=port                               send the command to the match manager started with serve\n" +
+            " -cache=dir                                 reuse preprocessed contexts stored in dir by offline, allsteps and batch\n";    
 
     /**
      * Provides command line interface to the match manager.
@@ -129,12 +187,18 @@ public class CLI {
     public static void main(String[] args) throws IOException, DISIException, ClassNotFoundException {
         // initialize property file
         String configFileName = null;
+        String serverPort = null;
+        String cacheDirectory = null;
         
         ArrayList<String> cleanArgs = new ArrayList<>();
         for (String arg : args) {
             if (arg.startsWith(CONFIG_FILE_CMD_LINE_KEY)) {
                 configFileName = arg.substring(CONFIG_FILE_CMD_LINE_KEY.length());
                 System.out.println("Using config file: " + configFileName);
+            } else if (arg.startsWith(SERVER_PORT_CMD_LINE_KEY)) {
+                serverPort = arg.substring(SERVER_PORT_CMD_LINE_KEY.length());
+            } else if (arg.startsWith(CACHE_DIR_CMD_LINE_KEY)) {
+                cacheDirectory = arg.substring(CACHE_DIR_CMD_LINE_KEY.length());
             } else {
                 cleanArgs.add(arg);
             }
@@ -143,6 +207,89 @@ public class CLI {
         args = cleanArgs.toArray(new String[cleanArgs.size()]);
 
         // check input parameters
+        if (args.length < 1) {
+            log.info(USAGE);
+        } else if (null != serverPort) {
+            if (null != configFileName || null != cacheDirectory) {
+                log.warn("Ignoring config file and cache, the server uses the ones it was started with.");
+            }
+            String reply = CLIServer.submit(Integer.parseInt(serverPort), toServerArgs(args));
+            log.info("Server reply: " + reply);
+            if (null == reply || reply.startsWith(CLIServer.REPLY_ERROR)) {
+                throw new SMatchException("Server failed to execute " + args[0] + ": " + reply);
+            }
+        } else {
+            IMatchManager warmManager = null;
+            OfflineCache cache = null;
+            if (null != cacheDirectory) {
+                // the cache reads its entries back with the linguistic oracle of the config
+                ApplicationContext config = loadConfig(configFileName, null);
+                warmManager = config.getBean(MATCH_MANAGER_BEAN, IMatchManager.class);
+                cache = new OfflineCache(cacheDirectory, getLinguisticOracle(config));
+            }
+            if (CMD_SERVE.equals(args[0])) {
+                if (1 < args.length) {
+                    if (null == warmManager) {
+                        warmManager = createMatchManager(configFileName);
+                    }
+                    CLIServer server = new CLIServer(warmManager, configFileName, cache, Integer.parseInt(args[1]));
+                    server.serve();
+                } else {
+                    log.error("Not enough arguments for serve command.");
+                }
+            } else {
+                execute(warmManager, configFileName, cache, args);
+            }
+        }
+    }
+
+    /**
+     * Makes the file arguments of a command absolute, because the server resolves relative paths against its own
+     * working directory. Other arguments, such as the number of threads of batch, and URLs are left as they are.
+     *
+     * @param args command and its arguments
+     * @return command and its arguments as the server should see them
+     */
+    private static String[] toServerArgs(String[] args) {
+        String[] result = args.clone();
+        // arguments after the command which are file names
+        int fileArgs;
+        switch (args[0]) {
+            case CMD_WN_TO_FLAT:
+            case CMD_CONVERT:
+            case CMD_OFFLINE:
+            case CMD_ONLINE:
+            case CMD_FILTER:
+            case CMD_ALL_STEPS:
+                fileArgs = args.length - 1;
+                break;
+            case CMD_BATCH:
+                fileArgs = Math.min(1, args.length - 1);
+                break;
+            default:
+                fileArgs = 0;
+                break;
+        }
+        for (int i = 1; i <= fileArgs; i++) {
+            if (!URL_PATTERN.matcher(args[i]).matches()) {
+                result[i] = new File(args[i]).getAbsolutePath();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Executes a command.
+     *
+     * @param warmManager    match manager to use, if null, the one will be created from the config file
+     * @param configFileName config file name the match manager is created from
+     * @param cache          cache of preprocessed contexts, null to preprocess always
+     * @param args           command and its arguments
+     * @throws IOException            IOException
+     * @throws DISIException          DISIException
+     * @throws ClassNotFoundException ClassNotFoundException
+     */
+    public static void execute(IMatchManager warmManager, String configFileName, OfflineCache cache, String[] args) throws IOException, DISIException, ClassNotFoundException {
         if (args.length < 1) {
             log.info(USAGE);
         } else {
@@ -167,7 +314,7 @@ public class CLI {
                     }
                     break;
                 case CMD_CONVERT:
-                    mm = createMatchManager(configFileName);
+                    mm = getMatchManager(warmManager, configFileName);
                     if (2 < args.length) {
                         if (3 == args.length) {
                             String inputFile = args[1];
@@ -194,13 +341,13 @@ public class CLI {
                     }
                     break;
                 case CMD_OFFLINE:
-                    mm = createMatchManager(configFileName);
+                    mm = getMatchManager(warmManager, configFileName);
                     if (2 < args.length) {
                         String inputFile = args[1];
                         String outputFile = args[2];
                         if (mm.getContextLoader() instanceof IContextLoader && mm.getContextRenderer() instanceof IContextRenderer) {
                             IContext ctxSource = (IContext) mm.loadContext(inputFile);
-                            mm.offline(ctxSource);
+                            ctxSource = offline(mm, configFileName, cache, ctxSource);
                             mm.renderContext(ctxSource, outputFile);
                         } else {
                             log.warn("To preprocess a mapping, use context loaders and renderers support IContextLoader and IContextRenderer.");
@@ -210,7 +357,7 @@ public class CLI {
                     }
                     break;
                 case CMD_ONLINE:
-                    mm = createMatchManager(configFileName);
+                    mm = getMatchManager(warmManager, configFileName);
                     if (3 < args.length) {
                         String sourceFile = args[1];
                         String targetFile = args[2];
@@ -218,8 +365,12 @@ public class CLI {
                         if (mm.getContextLoader() instanceof IContextLoader) {
                             IContext ctxSource = (IContext) mm.loadContext(sourceFile);
                             IContext ctxTarget = (IContext) mm.loadContext(targetFile);
-                            IContextMapping<INode> result = mm.online(ctxSource, ctxTarget);
-                            mm.renderMapping(result, outputFile);
+                            if (mm.getMappingFactory() instanceof StreamingMappingFactory) {
+                                onlineStreaming(mm, ctxSource, ctxTarget, outputFile);
+                            } else {
+                                IContextMapping<INode> result = mm.online(ctxSource, ctxTarget);
+                                mm.renderMapping(result, outputFile);
+                            }
                         } else {
                             log.warn("To match contexts, use context loaders supporting IContextLoader.");
                         }
@@ -228,7 +379,7 @@ public class CLI {
                     }
                     break;
                 case CMD_FILTER:
-                    mm = createMatchManager(configFileName);
+                    mm = getMatchManager(warmManager, configFileName);
                     if (4 < args.length) {
                         String sourceFile = args[1];
                         String targetFile = args[2];
@@ -249,7 +400,7 @@ public class CLI {
                     }
                     break;
                 case CMD_ALL_STEPS:
-                    mm = createMatchManager(configFileName);
+                    mm = getMatchManager(warmManager, configFileName);
                     if (3 < args.length) {
                         String inputFile1 = args[1];
                         String inputFile2 = args[2];
@@ -257,17 +408,22 @@ public class CLI {
                         
                         if (mm.getContextLoader() instanceof IContextLoader) {
                             IContext ctxSource1 = (IContext) mm.loadContext(inputFile1);
-                            mm.offline(ctxSource1);
+                            ctxSource1 = offline(mm, configFileName, cache, ctxSource1);
                             IContext ctxSource2 = (IContext) mm.loadContext(inputFile2);
-                            mm.offline(ctxSource2);
-                            IContextMapping<INode> result = mm.online(ctxSource1, ctxSource2);
-                            try {
-                                IContextMapping<INode> mapOutput = mm.filterMapping(result);
-                            } catch (SMatchException ex){
-                                log.info("No filtering was performed (too see why, set logging at DEBUG level)");                                                               
-                                log.debug("Reason:\n", ex);                                
+                            ctxSource2 = offline(mm, configFileName, cache, ctxSource2);
+                            if (mm.getMappingFactory() instanceof StreamingMappingFactory) {
+                                log.info("No filtering was performed, because the mapping is streamed");
+                                onlineStreaming(mm, ctxSource1, ctxSource2, outputFile);
+                            } else {
+                                IContextMapping<INode> result = mm.online(ctxSource1, ctxSource2);
+                                try {
+                                    IContextMapping<INode> mapOutput = mm.filterMapping(result);
+                                } catch (SMatchException ex){
+                                    log.info("No filtering was performed (too see why, set logging at DEBUG level)");                                                               
+                                    log.debug("Reason:\n", ex);                                
+                                }
+                                mm.renderMapping(result, outputFile);
                             }
-                            mm.renderMapping(result, outputFile);
                         } else {
                             log.error("To preprocess a mapping, use context loaders that support IContextLoader");
                         }
@@ -275,6 +431,19 @@ public class CLI {
                         log.error("Not enough arguments for allsteps command.");
                     }
                     break;
+                case CMD_BATCH:
+                    if (1 < args.length) {
+                        int threads = Runtime.getRuntime().availableProcessors();
+                        if (2 < args.length) {
+                            threads = Integer.parseInt(args[2]);
+                        }
+                        // the batch matcher loads the configs itself to share the oracles between its workers
+                        BatchMatcher batchMatcher = new BatchMatcher(warmManager, configFileName, cache, threads);
+                        batchMatcher.match(args[1]);
+                    } else {
+                        log.error("Not enough arguments for batch command.");
+                    }
+                    break;
                 default:
                     log.error("Unrecognized command.");
                     break;
@@ -282,6 +451,77 @@ public class CLI {
         }
     }
 
+    private static void onlineStreaming(IMatchManager mm, IContext source, IContext target, String outputFile) throws IOException, SMatchException {
+        StreamingMappingFactory factory = (StreamingMappingFactory) mm.getMappingFactory();
+        factory.open(outputFile);
+        try {
+            mm.online(source, target);
+        } finally {
+            factory.close();
+        }
+    }
+
+    private static IContext offline(IMatchManager mm, String configFileName, OfflineCache cache, IContext context) throws SMatchException {
+        if (null == cache) {
+            mm.offline(context);
+            return context;
+        }
+        return cache.offline(mm, configFileName, context);
+    }
+
+    private static IMatchManager getMatchManager(IMatchManager warmManager, String configFileName) {
+        if (null != warmManager) {
+            return warmManager;
+        }
+        return createMatchManager(configFileName);
+    }
+
+    /**
+     * Loads the config file into an application context. With a parent, the linguistic oracles and the sense
+     * matchers defined as top level beans are taken from the parent instead of being created again.
+     *
+     * @param configFileName config file name, null for the default config
+     * @param parent         application context with the oracles, null to create them
+     * @return application context
+     */
+    public static GenericApplicationContext loadConfig(String configFileName, ApplicationContext parent) {
+        Resource resource;
+        if (null == configFileName) {
+            log.info("Using resource config file: " + DEFAULT_CONFIG_FILE_NAME);
+            resource = new ClassPathResource(DEFAULT_CONFIG_FILE_NAME);
+        } else {
+            resource = new FileSystemResource(configFileName);
+        }
+        GenericApplicationContext result = new GenericApplicationContext(parent);
+        new XmlBeanDefinitionReader(result).loadBeanDefinitions(resource);
+        if (null != parent) {
+            List<String> shared = new ArrayList<>(Arrays.asList(parent.getBeanNamesForType(ILinguisticOracle.class)));
+            shared.addAll(Arrays.asList(parent.getBeanNamesForType(ISenseMatcher.class)));
+            for (String name : shared) {
+                // the aliases, such as senseMatcher, resolve in the parent then
+                if (result.containsBeanDefinition(name)) {
+                    result.removeBeanDefinition(name);
+                }
+            }
+        }
+        result.refresh();
+        return result;
+    }
+
+    /**
+     * Returns the linguistic oracle of the config.
+     *
+     * @param config application context of the config
+     * @return the linguistic oracle, or null if the config has none
+     */
+    public static ILinguisticOracle getLinguisticOracle(ApplicationContext config) {
+        String[] names = config.getBeanNamesForType(ILinguisticOracle.class);
+        if (0 == names.length) {
+            return null;
+        }
+        return config.getBean(names[0], ILinguisticOracle.class);
+    }
+
     public static IMatchManager createMatchManager(String configFileName) {
         IMatchManager mm;
         if (configFileName == null) {
@@ -0,0 +1,180 @@
+package it.unitn.disi.smatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Keeps one match manager loaded and executes CLI commands received on a local port.
+ * <p/>
+ * Each connection carries one command: a single line with the command and its arguments separated by tabs.
+ * The server replies with a single line, which starts with {@link #REPLY_OK} or {@link #REPLY_ERROR},
+ * and closes the connection. Commands are executed one at a time, because match manager components are
+ * not designed for concurrent use. The server listens on the loopback interface only.
+ *
+ * @author agent
+ */
+public class CLIServer {
+
+    private static final Logger log = LoggerFactory.getLogger(CLIServer.class);
+
+    /**
+     * Stops the server.
+     */
+    public static final String CMD_SHUTDOWN = "shutdown";
+
+    public static final String REPLY_OK = "OK";
+    public static final String REPLY_ERROR = "ERROR";
+
+    private static final String SEPARATOR = "\t";
+
+    // how long to wait for a client to send its command, ms
+    private static final int READ_TIMEOUT = 60000;
+
+    private final IMatchManager mm;
+    private final String configFileName;
+    private final OfflineCache cache;
+    private final int port;
+    private ServerSocket serverSocket;
+    private volatile boolean running;
+
+    public CLIServer(IMatchManager mm, String configFileName, OfflineCache cache, int port) {
+        this.mm = mm;
+        this.configFileName = configFileName;
+        this.cache = cache;
+        this.port = port;
+    }
+
+    /**
+     * Binds the server to its port. Connections made after this call wait until {@link #serve()} accepts them.
+     *
+     * @return the port the server is bound to, useful when the server is created with port 0
+     * @throws IOException IOException
+     */
+    public synchronized int bind() throws IOException {
+        if (null == serverSocket) {
+            serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        }
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accepts and executes commands until {@link #CMD_SHUTDOWN} is received.
+     *
+     * @throws IOException IOException
+     */
+    public void serve() throws IOException {
+        bind();
+        running = true;
+        try (ServerSocket serverSocket = this.serverSocket) {
+            log.info("Serving on port " + serverSocket.getLocalPort());
+            while (running) {
+                try (Socket socket = serverSocket.accept()) {
+                    // a client which does not send its command should not block the server
+                    socket.setSoTimeout(READ_TIMEOUT);
+                    handle(socket);
+                } catch (IOException e) {
+                    if (log.isErrorEnabled()) {
+                        log.error("Error while handling connection: " + e.getMessage(), e);
+                    }
+                }
+            }
+        }
+        log.info("Server stopped");
+    }
+
+    private void handle(Socket socket) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+
+        String line = in.readLine();
+        String reply;
+        if (null == line || line.isEmpty()) {
+            reply = REPLY_ERROR + " Empty command";
+        } else {
+            String[] args = line.split(SEPARATOR);
+            if (CMD_SHUTDOWN.equals(args[0])) {
+                running = false;
+                reply = REPLY_OK;
+            } else if (CLI.CMD_SERVE.equals(args[0])) {
+                reply = REPLY_ERROR + " Already serving";
+            } else {
+                reply = execute(args);
+            }
+        }
+
+        out.write(reply);
+        out.newLine();
+        out.flush();
+    }
+
+    private String execute(String[] args) {
+        if (log.isInfoEnabled()) {
+            log.info("Executing: " + Arrays.toString(args));
+        }
+        long start = System.currentTimeMillis();
+        try {
+            CLI.execute(mm, configFileName, cache, args);
+            if (log.isInfoEnabled()) {
+                log.info("Executed " + args[0] + " in " + (System.currentTimeMillis() - start) + " ms");
+            }
+            return REPLY_OK;
+        } catch (Exception e) {
+            if (log.isErrorEnabled()) {
+                log.error("Error while executing " + Arrays.toString(args) + ": " + e.getMessage(), e);
+            }
+            return REPLY_ERROR + " " + e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+    }
+
+    /**
+     * Sends a command to a running server and waits for its completion.
+     *
+     * @param port server port
+     * @param args command and its arguments
+     * @return server reply
+     * @throws IOException IOException
+     */
+    public static String submit(int port, String[] args) throws IOException {
+        return submit(port, args, 0);
+    }
+
+    /**
+     * Sends a command to a running server and waits for its completion.
+     *
+     * @param port    server port
+     * @param args    command and its arguments
+     * @param timeout how long to wait for the reply, ms, 0 to wait as long as the command runs
+     * @return server reply
+     * @throws IOException IOException, including {@link java.net.SocketTimeoutException} if there is no reply in time
+     */
+    public static String submit(int port, String[] args, int timeout) throws IOException {
+        StringBuilder command = new StringBuilder();
+        for (String arg : args) {
+            if (0 < command.length()) {
+                command.append(SEPARATOR);
+            }
+            command.append(arg);
+        }
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setSoTimeout(timeout);
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out.write(command.toString());
+            out.newLine();
+            out.flush();
+            return in.readLine();
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package it.unitn.disi.smatch;
+
+import it.unitn.disi.smatch.data.trees.IContext;
+import it.unitn.disi.smatch.data.trees.INode;
+import it.unitn.disi.smatch.loaders.context.BinaryContextLoader;
+import it.unitn.disi.smatch.loaders.context.ContextLoaderException;
+import it.unitn.disi.smatch.oracles.ILinguisticOracle;
+import it.unitn.disi.smatch.renderers.context.BinaryContextRenderer;
+import it.unitn.disi.smatch.renderers.context.ContextRendererException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Disk cache of preprocessed contexts.
+ * <p/>
+ * Entries are keyed by the hash of the context content (tree structure and node names, ids, provenance and
+ * formulas, if any) and of the config file content, and are stored with {@link BinaryContextRenderer} and read back
+ * with {@link BinaryContextLoader}, whatever context loader and renderer the config has, because those may not
+ * read back what they write, like the SKOS loader and the XML renderer.
+ * Therefore a cache hit skips the linguistic preprocessing and restores the label formulas, the node formulas
+ * and the concepts with their senses. The senses are restored with the linguistic oracle of the config.
+ * <p/>
+ * Imported config files and placeholder values do not contribute to the fingerprint.
+ *
+ * @author agent
+ */
+public class OfflineCache {
+
+    private static final Logger log = LoggerFactory.getLogger(OfflineCache.class);
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    private final File directory;
+    // linguistic oracle of the config the cache is used with, restores the senses of the concepts
+    private final ILinguisticOracle linguisticOracle;
+    private final BinaryContextRenderer renderer = new BinaryContextRenderer();
+
+    // config file name - fingerprint, null key for the default config
+    private final Map<String, byte[]> fingerprints = new HashMap<>();
+
+    private long hits;
+    private long misses;
+
+    /**
+     * Creates a cache.
+     *
+     * @param directory        directory with the entries
+     * @param linguisticOracle linguistic oracle of the config the cache is used with, null if the config has none
+     */
+    public OfflineCache(String directory, ILinguisticOracle linguisticOracle) {
+        this.directory = new File(directory);
+        this.linguisticOracle = linguisticOracle;
+    }
+
+    /**
+     * Returns the preprocessed context, either from the cache, or by preprocessing the context with the match
+     * manager and storing the result in the cache.
+     *
+     * @param mm             match manager created from the config file
+     * @param configFileName config file name, null for the default config
+     * @param context        context to preprocess
+     * @return preprocessed context
+     * @throws SMatchException SMatchException
+     */
+    public IContext offline(IMatchManager mm, String configFileName, IContext context) throws SMatchException {
+        return offline(mm, linguisticOracle, configFileName, context);
+    }
+
+    /**
+     * Returns the preprocessed context like {@link #offline(IMatchManager, String, IContext)} for a config other
+     * than the one the cache was created for.
+     *
+     * @param mm               match manager created from the config file
+     * @param linguisticOracle linguistic oracle of the config, null if the config has none
+     * @param configFileName   config file name, null for the default config
+     * @param context          context to preprocess
+     * @return preprocessed context
+     * @throws SMatchException SMatchException
+     */
+    public synchronized IContext offline(IMatchManager mm, ILinguisticOracle linguisticOracle, String configFileName, IContext context) throws SMatchException {
+        File entry = new File(directory, key(configFileName, context));
+        if (entry.exists()) {
+            try {
+                IContext result = new BinaryContextLoader(linguisticOracle).loadContext(entry.getPath());
+                hits++;
+                if (log.isInfoEnabled()) {
+                    log.info("Loaded preprocessed context from cache: " + entry.getPath());
+                }
+                return result;
+            } catch (ContextLoaderException | RuntimeException e) {
+                if (log.isWarnEnabled()) {
+                    log.warn("Discarding unreadable cache entry " + entry.getPath() + ": " + e.getMessage());
+                }
+                if (!entry.delete()) {
+                    log.warn("Cannot delete cache entry " + entry.getPath());
+                }
+            }
+        }
+
+        misses++;
+        mm.offline(context);
+        store(context, entry);
+        return context;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private void store(IContext context, File entry) throws SMatchException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new SMatchException("Cannot create cache directory: " + directory.getPath());
+        }
+        // render into a temporary file and move it, so that concurrent runs never see partial entries
+        try {
+            File tmp = File.createTempFile(entry.getName(), ".tmp", directory);
+            renderer.render(context, tmp.getPath());
+            Files.move(tmp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (log.isInfoEnabled()) {
+                log.info("Stored preprocessed context in cache: " + entry.getPath());
+            }
+        } catch (IOException | ContextRendererException e) {
+            throw new SMatchException(e.getClass().getSimpleName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private String key(String configFileName, IContext context) throws SMatchException {
+        MessageDigest digest = createDigest();
+        digest.update(getFingerprint(configFileName));
+
+        // node data in preorder with children counts identify the tree, ids are included, because
+        // node formulas refer to them, and provenance, because the output carries it
+        Deque<INode> queue = new ArrayDeque<>();
+        queue.push(context.getRoot());
+        while (!queue.isEmpty()) {
+            INode node = queue.pop();
+            update(digest, node.nodeData().getName());
+            update(digest, node.nodeData().getId());
+            update(digest, node.nodeData().getProvenance());
+            update(digest, node.nodeData().getLabelFormula());
+            update(digest, node.nodeData().getNodeFormula());
+            int childCount = node.getChildCount();
+            digest.update((byte) (childCount >>> 24));
+            digest.update((byte) (childCount >>> 16));
+            digest.update((byte) (childCount >>> 8));
+            digest.update((byte) childCount);
+            for (int i = childCount - 1; i >= 0; i--) {
+                queue.push(node.getChildAt(i));
+            }
+        }
+
+        return toHex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        // null and empty values differ
+        if (null == value) {
+            digest.update((byte) 1);
+        } else {
+            digest.update((byte) 2);
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+    }
+
+    private byte[] getFingerprint(String configFileName) throws SMatchException {
+        byte[] result = fingerprints.get(configFileName);
+        if (null == result) {
+            MessageDigest digest = createDigest();
+            try (InputStream in = null == configFileName
+                    ? CLI.class.getResourceAsStream(CLI.DEFAULT_CONFIG_FILE_NAME)
+                    : new FileInputStream(configFileName)) {
+                if (null == in) {
+                    throw new SMatchException("Cannot read config: " + CLI.DEFAULT_CONFIG_FILE_NAME);
+                }
+                byte[] buffer = new byte[8192];
+                int count;
+                while (-1 != (count = in.read(buffer))) {
+                    digest.update(buffer, 0, count);
+                }
+            } catch (IOException e) {
+                throw new SMatchException(e.getClass().getSimpleName() + ": " + e.getMessage(), e);
+            }
+            result = digest.digest();
+            fingerprints.put(configFileName, result);
+        }
+        return result;
+    }
+
+    private static MessageDigest createDigest() throws SMatchException {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new SMatchException(e.getClass().getSimpleName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder result = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes) {
+            result.append(Character.forDigit((b >>> 4) & 0xF, 16));
+            result.append(Character.forDigit(b & 0xF, 16));
+        }
+        return result.toString();
+    }
+}
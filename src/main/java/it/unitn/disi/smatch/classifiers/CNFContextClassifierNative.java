@@ -0,0 +1,119 @@
+package it.unitn.disi.smatch.classifiers;
+
+import it.unitn.disi.smatch.async.AsyncTask;
+import it.unitn.disi.smatch.data.trees.IContext;
+import it.unitn.disi.smatch.data.trees.INode;
+import it.unitn.disi.smatch.loaders.context.ReferenceNodes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Create concept at node formulas for each node of the context.
+ * Converts concept at node formula into CNF with {@link CNFConverter}, producing formulas equivalent to the ones
+ * of {@link CNFContextClassifierOrbital} without the string rewriting and parsing of Orbital.
+ * <p/>
+ * The conversion keeps no state between formulas, therefore with parallelism greater than 1 the context is
+ * classified in a fork-join pool without any lock, see {@link SubtreeClassification}.
+ * Parallelism 0 uses all available processors.
+ * <p/>
+ * The subtrees of the concepts with several parents are first shared with their reference nodes, see
+ * {@link ReferenceNodes#expand(IContext)}, so that the node formulas are built along each path of a concept.
+ *
+ * @author agent
+ */
+public class CNFContextClassifierNative extends CNFContextClassifier implements IAsyncContextClassifier {
+
+    private static final Logger log = LoggerFactory.getLogger(CNFContextClassifierNative.class);
+
+    private final int parallelism;
+
+    public CNFContextClassifierNative() {
+        this(1);
+    }
+
+    public CNFContextClassifierNative(int parallelism) {
+        super();
+        this.parallelism = parallelism;
+    }
+
+    public CNFContextClassifierNative(IContext context) {
+        this(context, 1);
+    }
+
+    public CNFContextClassifierNative(IContext context, int parallelism) {
+        super(context);
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public AsyncTask<Void, INode> asyncClassify(IContext context) {
+        return new CNFContextClassifierNative(context, parallelism);
+    }
+
+    @Override
+    public void classify(IContext context) throws ContextClassifierException {
+        ReferenceNodes.expand(context);
+        int threads = 0 == parallelism ? Runtime.getRuntime().availableProcessors() : parallelism;
+        if (threads <= 1) {
+            super.classify(context);
+            return;
+        }
+
+        if (log.isInfoEnabled()) {
+            log.info("Classifying nodes: " + context.nodesCount() + " using threads: " + threads);
+        }
+        SubtreeClassification.classify(context, threads, new SubtreeClassification.NodeClassifier() {
+            @Override
+            public void buildCNode(INode node) throws ContextClassifierException {
+                CNFContextClassifierNative.this.buildCNode(node);
+            }
+
+            @Override
+            public void progress() {
+                reportProgress();
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return CNFContextClassifierNative.this.isCancelled();
+            }
+        });
+    }
+
+    private synchronized void reportProgress() {
+        progress();
+    }
+
+    /**
+     * Constructs c@node formula for the concept.
+     *
+     * @param in node to process
+     * @throws ContextClassifierException ContextClassifierException
+     */
+    protected void buildCNode(INode in) throws ContextClassifierException {
+        CNFConverter.setNodeFormula(in, toCNF(in, in.nodeData().getLabelFormula()));
+    }
+
+    /**
+     * Converts the formula into CNF.
+     *
+     * @param in      the owner of the formula
+     * @param formula the formula to convert
+     * @return formula in CNF form
+     * @throws ContextClassifierException ContextClassifierException
+     */
+    public static String toCNF(INode in, String formula) throws ContextClassifierException {
+        String result = formula;
+        if ((formula.contains("&") && formula.contains("|")) || formula.contains("~")) {
+            try {
+                result = CNFConverter.toCNF(formula);
+            } catch (ContextClassifierException e) {
+                if (log.isErrorEnabled()) {
+                    log.error("Logic parse exception for: " + formula + " at node: " + (null == in ? null : in.nodeData().getName()));
+                }
+                throw e;
+            }
+        }
+        return result;
+    }
+}
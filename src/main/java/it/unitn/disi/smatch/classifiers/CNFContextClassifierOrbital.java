@@ -3,16 +3,32 @@ package it.unitn.disi.smatch.classifiers;
 import it.unitn.disi.smatch.async.AsyncTask;
 import it.unitn.disi.smatch.data.trees.IContext;
 import it.unitn.disi.smatch.data.trees.INode;
-import it.unitn.disi.smatch.data.trees.INodeData;
+import it.unitn.disi.smatch.loaders.context.ReferenceNodes;
 import orbital.logic.imp.Formula;
 import orbital.logic.sign.ParseException;
 import orbital.moon.logic.ClassicalLogic;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Create concept at node formulas for each node of the context.
  * Converts concept at node formula into CNF.
+ * <p/>
+ * Label formulas repeat heavily in real contexts, therefore conversions are kept in a bounded LRU cache. The cache
+ * belongs to the configured classifier and is shared only with the asynchronous tasks it creates. Each thread reuses
+ * its own ClassicalLogic instance, but the Orbital rewriting into CNF keeps static state and therefore runs one
+ * conversion at a time, which limits the gain of parallelism; {@link CNFContextClassifierNative} has no shared state.
+ * <p/>
+ * With parallelism greater than 1 the context is classified in a fork-join pool, see {@link SubtreeClassification}.
+ * Parallelism 0 uses all available processors.
+ * <p/>
+ * The subtrees of the concepts with several parents are first shared with their reference nodes, see
+ * {@link ReferenceNodes#expand(IContext)}, so that the node formulas are built along each path of a concept.
  *
  * @author <a rel="author" href="http://autayeu.com/">Aliaksandr Autayeu</a>
  */
@@ -20,17 +36,108 @@ public class CNFContextClassifierOrbital extends CNFContextClassifier implements
 
     private static final Logger log = LoggerFactory.getLogger(CNFContextClassifierOrbital.class);
 
+    /**
+     * Maximum number of formulas kept in the CNF cache.
+     */
+    public static final int CNF_CACHE_SIZE = 100000;
+
+    // normalized formula - formula in CNF
+    private final Map<String, String> cnfCache;
+
+    private final AtomicLong cacheHits;
+    private final AtomicLong cacheMisses;
+
+    private static final ThreadLocal<ClassicalLogic> logic = new ThreadLocal<ClassicalLogic>() {
+        @Override
+        protected ClassicalLogic initialValue() {
+            return new ClassicalLogic();
+        }
+    };
+
+    // guards the static state of the Orbital CNF rewriting
+    private static final Object orbitalLock = new Object();
+
+    private final int parallelism;
+
     public CNFContextClassifierOrbital() {
+        this(1);
+    }
+
+    public CNFContextClassifierOrbital(int parallelism) {
         super();
+        this.parallelism = parallelism;
+        this.cnfCache = createCache();
+        this.cacheHits = new AtomicLong();
+        this.cacheMisses = new AtomicLong();
     }
 
     public CNFContextClassifierOrbital(IContext context) {
+        this(context, 1);
+    }
+
+    public CNFContextClassifierOrbital(IContext context, int parallelism) {
         super(context);
+        this.parallelism = parallelism;
+        this.cnfCache = createCache();
+        this.cacheHits = new AtomicLong();
+        this.cacheMisses = new AtomicLong();
+    }
+
+    private CNFContextClassifierOrbital(IContext context, CNFContextClassifierOrbital parent) {
+        super(context);
+        this.parallelism = parent.parallelism;
+        this.cnfCache = parent.cnfCache;
+        this.cacheHits = parent.cacheHits;
+        this.cacheMisses = parent.cacheMisses;
+    }
+
+    private static Map<String, String> createCache() {
+        return Collections.synchronizedMap(
+                new LinkedHashMap<String, String>(1024, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                        return CNF_CACHE_SIZE < size();
+                    }
+                });
     }
 
     @Override
     public AsyncTask<Void, INode> asyncClassify(IContext context) {
-        return new CNFContextClassifierOrbital(context);
+        return new CNFContextClassifierOrbital(context, this);
+    }
+
+    @Override
+    public void classify(IContext context) throws ContextClassifierException {
+        ReferenceNodes.expand(context);
+        int threads = 0 == parallelism ? Runtime.getRuntime().availableProcessors() : parallelism;
+        if (threads <= 1) {
+            super.classify(context);
+            return;
+        }
+
+        if (log.isInfoEnabled()) {
+            log.info("Classifying nodes: " + context.nodesCount() + " using threads: " + threads);
+        }
+        SubtreeClassification.classify(context, threads, new SubtreeClassification.NodeClassifier() {
+            @Override
+            public void buildCNode(INode node) throws ContextClassifierException {
+                CNFContextClassifierOrbital.this.buildCNode(node);
+            }
+
+            @Override
+            public void progress() {
+                reportProgress();
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return CNFContextClassifierOrbital.this.isCancelled();
+            }
+        });
+    }
+
+    private synchronized void reportProgress() {
+        progress();
     }
 
     /**
@@ -40,27 +147,36 @@ public class CNFContextClassifierOrbital extends CNFContextClassifier implements
      * @throws ContextClassifierException ContextClassifierException
      */
     protected void buildCNode(INode in) throws ContextClassifierException {
-        StringBuilder path = new StringBuilder();
-        INodeData nd = in.nodeData();
-        String formula = toCNF(in, nd.getLabelFormula());
-        if (formula != null && !formula.isEmpty() && !formula.equals(" ")) {
-            if (formula.contains(" ")) {
-                formula = "(" + formula + ")";
-            }
-            path.append(formula);
+        CNFConverter.setNodeFormula(in, cachedCNF(in, in.nodeData().getLabelFormula()));
+    }
+
+    /**
+     * Converts the formula into CNF, looking it up in the cache first.
+     *
+     * @param in      the owner of the formula
+     * @param formula the formula to convert
+     * @return formula in CNF form
+     * @throws ContextClassifierException ContextClassifierException
+     */
+    private String cachedCNF(INode in, String formula) throws ContextClassifierException {
+        if (!needsConversion(formula)) {
+            return formula;
         }
-        if (in.hasParent()) {
-            formula = in.getParent().nodeData().getNodeFormula();
-            if (formula != null && !formula.isEmpty() && !formula.equals(" ")) {
-                if (2 < path.length()) {
-                    path.append(" & ").append(formula);
-                } else {
-                    path.append(formula);
-                }
-            }
+        // the conversion depends only on the trimmed formula
+        String key = formula.trim();
+        String result = cnfCache.get(key);
+        if (null != result) {
+            cacheHits.incrementAndGet();
+        } else {
+            cacheMisses.incrementAndGet();
+            result = toCNF(in, formula);
+            cnfCache.put(key, result);
         }
+        return result;
+    }
 
-        nd.setNodeFormula(path.toString());
+    private static boolean needsConversion(String formula) {
+        return (formula.contains("&") && formula.contains("|")) || formula.contains("~");
     }
 
     /**
@@ -73,16 +189,18 @@ public class CNFContextClassifierOrbital extends CNFContextClassifier implements
      */
     public static String toCNF(INode in, String formula) throws ContextClassifierException {
         String result = formula;
-        if ((formula.contains("&") && formula.contains("|")) || formula.contains("~")) {
+        if (needsConversion(formula)) {
             String tmpFormula = formula;
             tmpFormula = tmpFormula.trim();
             try {
-                ClassicalLogic cl = new ClassicalLogic();
+                ClassicalLogic cl = logic.get();
                 if (!tmpFormula.isEmpty()) {
                     tmpFormula = tmpFormula.replace('.', 'P');
                     Formula f = (Formula) (cl.createExpression(tmpFormula));
-                    Formula cnf = ClassicalLogic.Utilities.conjunctiveForm(f);
-                    tmpFormula = cnf.toString();
+                    synchronized (orbitalLock) {
+                        Formula cnf = ClassicalLogic.Utilities.conjunctiveForm(f);
+                        tmpFormula = cnf.toString();
+                    }
                     result = tmpFormula.replace('P', '.');
                 } else {
                     result = tmpFormula;
@@ -90,7 +208,7 @@ public class CNFContextClassifierOrbital extends CNFContextClassifier implements
             } catch (ParseException e) {
                 final String errMessage = "Logic parse exception: " + e.getClass().getSimpleName() + ": " + e.getMessage();
                 if (log.isErrorEnabled()) {
-                    log.error("Logic parse exception for: " + formula + " at node: " + in.nodeData().getName());
+                    log.error("Logic parse exception for: " + formula + " at node: " + (null == in ? null : in.nodeData().getName()));
                     log.error(errMessage, e);
                 }
                 throw new ContextClassifierException(errMessage, e);
@@ -98,4 +216,22 @@ public class CNFContextClassifierOrbital extends CNFContextClassifier implements
         }
         return result;
     }
+
+    /**
+     * Returns the number of conversions served from the CNF cache of this classifier.
+     *
+     * @return the number of cache hits
+     */
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    /**
+     * Returns the number of conversions of this classifier done by Orbital.
+     *
+     * @return the number of cache misses
+     */
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
 }
\ No newline at end of file
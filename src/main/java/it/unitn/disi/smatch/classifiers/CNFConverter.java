@@ -0,0 +1,355 @@
+package it.unitn.disi.smatch.classifiers;
+
+import it.unitn.disi.smatch.data.trees.INode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Converts label formulas into CNF without external logic libraries.
+ * <p/>
+ * The formula is parsed directly into a tree with atoms coded as ints, negations are pushed down to the atoms
+ * and the conjunctions are distributed over the disjunctions. The clauses are kept as sorted int arrays,
+ * which makes removing duplicated literals, tautologies, duplicated and subsumed clauses cheap.
+ * The result is equivalent to the input formula.
+ * <p/>
+ * Syntax: atoms consist of letters, digits, dots and underscores, ~ is negation, &amp; is conjunction,
+ * | is disjunction, &amp; binds tighter than |, parentheses group.
+ *
+ * @author agent
+ */
+public class CNFConverter {
+
+    private static final int ATOM = 0;
+    private static final int NOT = 1;
+    private static final int AND = 2;
+    private static final int OR = 3;
+
+    /**
+     * Formula tree node.
+     */
+    private static class Node {
+        final int type;
+        // atom code for ATOM, otherwise 0
+        final int atom;
+        final List<Node> children;
+
+        Node(int atom) {
+            this.type = ATOM;
+            this.atom = atom;
+            this.children = null;
+        }
+
+        Node(int type, List<Node> children) {
+            this.type = type;
+            this.atom = 0;
+            this.children = children;
+        }
+    }
+
+    private final String formula;
+    private int position;
+
+    // atom - code, codes start from 1, so that -code is the negated atom
+    private final Map<String, Integer> codes = new HashMap<>();
+    private final List<String> atoms = new ArrayList<>();
+
+    private CNFConverter(String formula) {
+        this.formula = formula;
+        this.atoms.add(null);
+    }
+
+    /**
+     * Sets the c@node formula of the node: the CNF of its label formula and the c@node formula of its parent.
+     *
+     * @param in       node to process
+     * @param labelCNF label formula of the node in CNF
+     */
+    static void setNodeFormula(INode in, String labelCNF) {
+        StringBuilder path = new StringBuilder();
+        String formula = labelCNF;
+        if (formula != null && !formula.isEmpty() && !formula.equals(" ")) {
+            if (formula.contains(" ")) {
+                formula = "(" + formula + ")";
+            }
+            path.append(formula);
+        }
+        if (in.hasParent()) {
+            formula = in.getParent().nodeData().getNodeFormula();
+            if (formula != null && !formula.isEmpty() && !formula.equals(" ")) {
+                if (2 < path.length()) {
+                    path.append(" & ").append(formula);
+                } else {
+                    path.append(formula);
+                }
+            }
+        }
+
+        in.nodeData().setNodeFormula(path.toString());
+    }
+
+    /**
+     * Converts the formula into CNF.
+     *
+     * @param formula formula to convert
+     * @return the formula in CNF, or an empty string if the formula is always true
+     * @throws ContextClassifierException if the formula cannot be parsed
+     */
+    public static String toCNF(String formula) throws ContextClassifierException {
+        String tmpFormula = formula.trim();
+        if (tmpFormula.isEmpty()) {
+            return tmpFormula;
+        }
+        CNFConverter converter = new CNFConverter(tmpFormula);
+        Node root = converter.parseDisjunction();
+        converter.skipWhitespace();
+        if (converter.position < tmpFormula.length()) {
+            throw converter.error("Unexpected character");
+        }
+        return converter.render(simplify(clauses(root, false)));
+    }
+
+    private Node parseDisjunction() throws ContextClassifierException {
+        Node first = parseConjunction();
+        List<Node> children = null;
+        while (consume('|')) {
+            if (null == children) {
+                children = new ArrayList<>();
+                children.add(first);
+            }
+            children.add(parseConjunction());
+        }
+        return null == children ? first : new Node(OR, children);
+    }
+
+    private Node parseConjunction() throws ContextClassifierException {
+        Node first = parseNegation();
+        List<Node> children = null;
+        while (consume('&')) {
+            if (null == children) {
+                children = new ArrayList<>();
+                children.add(first);
+            }
+            children.add(parseNegation());
+        }
+        return null == children ? first : new Node(AND, children);
+    }
+
+    private Node parseNegation() throws ContextClassifierException {
+        if (consume('~')) {
+            List<Node> children = new ArrayList<>(1);
+            children.add(parseNegation());
+            return new Node(NOT, children);
+        }
+        if (consume('(')) {
+            Node result = parseDisjunction();
+            if (!consume(')')) {
+                throw error("Missing )");
+            }
+            return result;
+        }
+        return parseAtom();
+    }
+
+    private Node parseAtom() throws ContextClassifierException {
+        skipWhitespace();
+        int start = position;
+        while (position < formula.length() && isAtomChar(formula.charAt(position))) {
+            position++;
+        }
+        if (start == position) {
+            throw error("Atom expected");
+        }
+        String atom = formula.substring(start, position);
+        Integer code = codes.get(atom);
+        if (null == code) {
+            code = atoms.size();
+            codes.put(atom, code);
+            atoms.add(atom);
+        }
+        return new Node(code);
+    }
+
+    private static boolean isAtomChar(char c) {
+        return Character.isLetterOrDigit(c) || '.' == c || '_' == c;
+    }
+
+    private boolean consume(char c) {
+        skipWhitespace();
+        if (position < formula.length() && c == formula.charAt(position)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() {
+        while (position < formula.length() && Character.isWhitespace(formula.charAt(position))) {
+            position++;
+        }
+    }
+
+    private ContextClassifierException error(String message) {
+        return new ContextClassifierException(message + " at position " + position + " in formula: " + formula);
+    }
+
+    /**
+     * Returns the clauses of the node in CNF, pushing the negation down.
+     *
+     * @param node    formula node
+     * @param negated whether the node is negated
+     * @return clauses as sorted literal arrays
+     */
+    private static List<int[]> clauses(Node node, boolean negated) {
+        switch (node.type) {
+            case ATOM: {
+                List<int[]> result = new ArrayList<>(1);
+                result.add(new int[]{negated ? -node.atom : node.atom});
+                return result;
+            }
+            case NOT: {
+                return clauses(node.children.get(0), !negated);
+            }
+            default: {
+                // De Morgan: negated AND is OR of negations and vice versa
+                boolean conjunction = (AND == node.type) != negated;
+                if (conjunction) {
+                    List<int[]> result = new ArrayList<>();
+                    for (Node child : node.children) {
+                        result.addAll(clauses(child, negated));
+                    }
+                    return result;
+                } else {
+                    List<int[]> result = null;
+                    for (Node child : node.children) {
+                        List<int[]> childClauses = clauses(child, negated);
+                        result = null == result ? childClauses : distribute(result, childClauses);
+                    }
+                    return result;
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes CNF of the disjunction of two CNFs.
+     */
+    private static List<int[]> distribute(List<int[]> left, List<int[]> right) {
+        List<int[]> result = new ArrayList<>(left.size() * right.size());
+        for (int[] l : left) {
+            for (int[] r : right) {
+                int[] clause = merge(l, r);
+                if (null != clause) {
+                    result.add(clause);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Merges two sorted clauses, dropping duplicated literals.
+     *
+     * @return merged clause or null if it is a tautology
+     */
+    private static int[] merge(int[] l, int[] r) {
+        int[] result = new int[l.length + r.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < l.length || j < r.length) {
+            int literal;
+            if (j == r.length || (i < l.length && compare(l[i], r[j]) <= 0)) {
+                literal = l[i++];
+            } else {
+                literal = r[j++];
+            }
+            if (0 < k && result[k - 1] == literal) {
+                continue;
+            }
+            if (0 < k && result[k - 1] == -literal) {
+                return null;
+            }
+            result[k++] = literal;
+        }
+        return k == result.length ? result : Arrays.copyOf(result, k);
+    }
+
+    // orders literals by atom, negative first
+    private static int compare(int a, int b) {
+        int result = Integer.compare(Math.abs(a), Math.abs(b));
+        return 0 != result ? result : Integer.compare(a, b);
+    }
+
+    /**
+     * Removes duplicated and subsumed clauses.
+     */
+    private static List<int[]> simplify(List<int[]> clauses) {
+        Set<List<Integer>> seen = new LinkedHashSet<>();
+        List<int[]> unique = new ArrayList<>(clauses.size());
+        for (int[] clause : clauses) {
+            List<Integer> key = new ArrayList<>(clause.length);
+            for (int literal : clause) {
+                key.add(literal);
+            }
+            if (seen.add(key)) {
+                unique.add(clause);
+            }
+        }
+
+        List<int[]> result = new ArrayList<>(unique.size());
+        for (int i = 0; i < unique.size(); i++) {
+            boolean subsumed = false;
+            for (int j = 0; j < unique.size() && !subsumed; j++) {
+                subsumed = i != j && unique.get(j).length < unique.get(i).length && contains(unique.get(i), unique.get(j));
+            }
+            if (!subsumed) {
+                result.add(unique.get(i));
+            }
+        }
+        return result;
+    }
+
+    private static boolean contains(int[] clause, int[] subset) {
+        int i = 0;
+        for (int literal : subset) {
+            while (i < clause.length && clause[i] != literal) {
+                i++;
+            }
+            if (i == clause.length) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String render(List<int[]> clauses) {
+        StringBuilder result = new StringBuilder();
+        for (int[] clause : clauses) {
+            if (0 < result.length()) {
+                result.append(" & ");
+            }
+            if (1 < clause.length) {
+                result.append('(');
+            }
+            for (int i = 0; i < clause.length; i++) {
+                if (0 < i) {
+                    result.append(" | ");
+                }
+                if (clause[i] < 0) {
+                    result.append('~');
+                }
+                result.append(atoms.get(Math.abs(clause[i])));
+            }
+            if (1 < clause.length) {
+                result.append(')');
+            }
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,102 @@
+package it.unitn.disi.smatch.classifiers;
+
+import it.unitn.disi.smatch.data.trees.IContext;
+import it.unitn.disi.smatch.data.trees.INode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Classifies a context in a fork-join pool.
+ * <p/>
+ * The c@node formula of a node depends only on its label formula and on the c@node formula of its parent,
+ * therefore sibling subtrees are independent: once the node formula is set, each child subtree is classified
+ * as a separate task. Leaves are classified by the task of their parent.
+ *
+ * @author agent
+ */
+class SubtreeClassification {
+
+    /**
+     * The classifier whose node formulas are built.
+     */
+    interface NodeClassifier {
+
+        void buildCNode(INode node) throws ContextClassifierException;
+
+        /**
+         * Called after each node, from the pool threads.
+         */
+        void progress();
+
+        boolean isCancelled();
+    }
+
+    private SubtreeClassification() {
+    }
+
+    /**
+     * Classifies the context with the given number of threads.
+     *
+     * @param context    context to classify
+     * @param threads    number of threads
+     * @param classifier classifier building the node formulas
+     * @throws ContextClassifierException the first exception of the classifier
+     */
+    static void classify(IContext context, int threads, NodeClassifier classifier) throws ContextClassifierException {
+        AtomicReference<ContextClassifierException> error = new AtomicReference<>();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new SubtreeTask(context.getRoot(), classifier, error));
+        } finally {
+            pool.shutdown();
+        }
+        if (null != error.get()) {
+            throw error.get();
+        }
+    }
+
+    /**
+     * Builds the formula of the node and then classifies its child subtrees in parallel.
+     */
+    private static class SubtreeTask extends RecursiveAction {
+
+        private final INode node;
+        private final NodeClassifier classifier;
+        private final AtomicReference<ContextClassifierException> error;
+
+        public SubtreeTask(INode node, NodeClassifier classifier, AtomicReference<ContextClassifierException> error) {
+            this.node = node;
+            this.classifier = classifier;
+            this.error = error;
+        }
+
+        @Override
+        protected void compute() {
+            if (null != error.get() || classifier.isCancelled()) {
+                return;
+            }
+            try {
+                classifier.buildCNode(node);
+                classifier.progress();
+                List<SubtreeTask> subtrees = new ArrayList<>();
+                for (int i = 0; i < node.getChildCount(); i++) {
+                    INode child = node.getChildAt(i);
+                    if (0 == child.getChildCount()) {
+                        // leaves are not worth a task
+                        classifier.buildCNode(child);
+                        classifier.progress();
+                    } else {
+                        subtrees.add(new SubtreeTask(child, classifier, error));
+                    }
+                }
+                invokeAll(subtrees);
+            } catch (ContextClassifierException e) {
+                error.compareAndSet(null, e);
+            }
+        }
+    }
+}
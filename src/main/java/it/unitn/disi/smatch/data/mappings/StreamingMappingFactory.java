@@ -0,0 +1,238 @@
+package it.unitn.disi.smatch.data.mappings;
+
+import it.unitn.disi.smatch.data.trees.IContext;
+import it.unitn.disi.smatch.data.trees.INode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Mapping factory which streams node mappings into a file while they are being computed.
+ * <p/>
+ * Between {@link #open(String)} and {@link #close()} the context mappings created by this factory do not keep
+ * their elements. Instead, each element with a relation is put into a bounded queue and a writer thread
+ * writes it in the format of PlainMappingRenderer: source path, relation and target path separated by tabs,
+ * where the path consists of node names from the root separated by backslashes. Therefore the memory used
+ * by a mapping is bounded by the queue size and when the queue is full, the matcher waits for the writer.
+ * <p/>
+ * Outside of a streaming session and for atomic concepts of labels, the factory behaves as {@link HashMapping}.
+ * Streamed mappings cannot be iterated, filtered or rendered again.
+ *
+ * @author agent
+ */
+public class StreamingMappingFactory extends HashMapping<INode> {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamingMappingFactory.class);
+
+    public static final int DEFAULT_QUEUE_SIZE = 10000;
+
+    // marks the end of the stream
+    private static final IMappingElement<INode> END = new MappingElement<>(null, null, IMappingElement.IDK);
+
+    private final int queueSize;
+
+    private BlockingQueue<IMappingElement<INode>> queue;
+    private Thread writerThread;
+    private volatile IOException writerException;
+    private long streamed;
+
+    public StreamingMappingFactory() {
+        this(DEFAULT_QUEUE_SIZE);
+    }
+
+    public StreamingMappingFactory(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * Mapping which forwards its elements to the writer queue instead of keeping them.
+     */
+    private static class StreamingContextMapping extends HashMapping<INode> {
+
+        private final BlockingQueue<IMappingElement<INode>> queue;
+        private int size;
+
+        public StreamingContextMapping(IContext sourceContext, IContext targetContext, BlockingQueue<IMappingElement<INode>> queue) {
+            super(sourceContext, targetContext);
+            this.queue = queue;
+        }
+
+        @Override
+        public boolean setRelation(INode source, INode target, char relation) {
+            if (IMappingElement.IDK == relation) {
+                return false;
+            }
+            put(new MappingElement<>(source, target, relation));
+            return true;
+        }
+
+        @Override
+        public boolean add(IMappingElement<INode> e) {
+            if (IMappingElement.IDK == e.getRelation()) {
+                return false;
+            }
+            put(e);
+            return true;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Iterator<IMappingElement<INode>> iterator() {
+            return Collections.emptyIterator();
+        }
+
+        private void put(IMappingElement<INode> e) {
+            try {
+                queue.put(e);
+                size++;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while streaming the mapping", ex);
+            }
+        }
+    }
+
+    @Override
+    public synchronized IContextMapping<INode> getContextMappingInstance(IContext source, IContext target) {
+        if (null == queue) {
+            return super.getContextMappingInstance(source, target);
+        }
+        return new StreamingContextMapping(source, target, queue);
+    }
+
+    /**
+     * Starts streaming the mappings created from now on into the file.
+     *
+     * @param fileName output file name
+     * @throws IOException IOException
+     */
+    public synchronized void open(String fileName) throws IOException {
+        if (null != queue) {
+            throw new IllegalStateException("Streaming is already in progress");
+        }
+        final Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileName), StandardCharsets.UTF_8));
+        final BlockingQueue<IMappingElement<INode>> writerQueue = new ArrayBlockingQueue<>(queueSize);
+        queue = writerQueue;
+        writerException = null;
+        streamed = 0;
+        writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    IMappingElement<INode> e;
+                    while (END != (e = writerQueue.take())) {
+                        out.write(getPathToRoot(e.getSource()));
+                        out.write('\t');
+                        out.write(e.getRelation());
+                        out.write('\t');
+                        out.write(getPathToRoot(e.getTarget()));
+                        out.write('\n');
+                        streamed++;
+                    }
+                } catch (IOException e) {
+                    writerException = e;
+                    // keep the matcher going, elements are discarded
+                    drain(writerQueue);
+                } catch (InterruptedException e) {
+                    writerException = new InterruptedIOException("Interrupted while writing the mapping");
+                    // the matcher and close() wait for space in the queue, elements are discarded until the end
+                    drain(writerQueue);
+                    Thread.currentThread().interrupt();
+                } finally {
+                    try {
+                        out.close();
+                    } catch (IOException e) {
+                        if (null == writerException) {
+                            writerException = e;
+                        }
+                    }
+                }
+            }
+        }, "mapping-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Waits until all streamed elements are written and closes the file.
+     *
+     * @throws IOException IOException
+     */
+    public synchronized void close() throws IOException {
+        if (null == queue) {
+            return;
+        }
+        try {
+            queue.put(END);
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing the mapping", e);
+        } finally {
+            queue = null;
+            writerThread = null;
+        }
+        if (log.isInfoEnabled()) {
+            log.info("Streamed mapping elements: " + streamed);
+        }
+        if (null != writerException) {
+            throw writerException;
+        }
+    }
+
+    /**
+     * Discards the elements until the end of the stream. Interruptions are deferred until then, otherwise
+     * the threads putting into the full queue would wait forever.
+     *
+     * @param queue writer queue
+     */
+    private static void drain(BlockingQueue<IMappingElement<INode>> queue) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (END == queue.take()) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String getPathToRoot(INode node) {
+        Deque<String> names = new ArrayDeque<>();
+        INode curNode = node;
+        while (null != curNode) {
+            names.push(curNode.nodeData().getName());
+            curNode = curNode.getParent();
+        }
+        StringBuilder result = new StringBuilder();
+        for (String name : names) {
+            if (0 < result.length()) {
+                result.append('\\');
+            }
+            result.append(name);
+        }
+        return result.toString();
+    }
+}
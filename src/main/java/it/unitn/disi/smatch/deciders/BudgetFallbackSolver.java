@@ -0,0 +1,52 @@
+package it.unitn.disi.smatch.deciders;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SAT solver which answers the checks exceeding the budget of the underlying solver with a fixed result,
+ * satisfiable by default, which means that no relation holds. Other failures are passed on.
+ * <p/>
+ * Put it above the caching solvers, so that the fixed result is given to the matcher, but never cached.
+ *
+ * @author agent
+ */
+public class BudgetFallbackSolver implements ISATSolver {
+
+    private final ISATSolver satSolver;
+    private final boolean timeoutResult;
+
+    private final AtomicLong timedOut = new AtomicLong();
+
+    public BudgetFallbackSolver(ISATSolver satSolver) {
+        this(satSolver, true);
+    }
+
+    /**
+     * Creates a solver answering the checks which exceed the budget with the given result.
+     *
+     * @param satSolver     solver with a budget
+     * @param timeoutResult result of a check which exceeds the budget
+     */
+    public BudgetFallbackSolver(ISATSolver satSolver, boolean timeoutResult) {
+        this.satSolver = satSolver;
+        this.timeoutResult = timeoutResult;
+    }
+
+    public boolean isSatisfiable(String input) throws SATSolverException {
+        try {
+            return satSolver.isSatisfiable(input);
+        } catch (SATBudgetExceededException e) {
+            timedOut.incrementAndGet();
+            return timeoutResult;
+        }
+    }
+
+    /**
+     * Returns the number of checks answered with the timeout result.
+     *
+     * @return the number of timed out checks
+     */
+    public long getTimedOut() {
+        return timedOut.get();
+    }
+}
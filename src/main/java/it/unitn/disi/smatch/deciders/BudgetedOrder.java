@@ -0,0 +1,140 @@
+package it.unitn.disi.smatch.deciders;
+
+import org.opensat.ISolver;
+import org.opensat.datatype.SolverStats;
+import org.opensat.minisat.IHeuristics;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Variable order which stops the search of a MiniSAT solver when the budget is exhausted or the thread is
+ * interrupted.
+ * <p/>
+ * The bundled MiniSAT has no timeouts and its search loop is not public. However, the solver asks its
+ * {@link IHeuristics} for every decision, therefore this order wraps the one of the solver, delegates to it and
+ * aborts {@link ISolver#solve()} with {@link Stop} before a decision once the budget is over. The search itself
+ * runs unchanged. The solver is left in the middle of the search and must be discarded.
+ * <p/>
+ * The order is installed through the public getOrder and setOrder methods of the solver, whose class is not
+ * public, hence the reflection.
+ *
+ * @author agent
+ */
+final class BudgetedOrder implements IHeuristics {
+
+    /**
+     * The clock is looked at every CLOCK_DECISIONS decisions.
+     */
+    private static final int CLOCK_DECISIONS = 256;
+
+    private static final Method getOrder;
+    private static final Method setOrder;
+
+    static {
+        try {
+            Class<?> solverClass = Class.forName("org.opensat.minisat.Solver");
+            getOrder = solverClass.getMethod("getOrder");
+            getOrder.setAccessible(true);
+            setOrder = solverClass.getMethod("setOrder", IHeuristics.class);
+            setOrder.setAccessible(true);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Aborts the search.
+     */
+    static final class Stop extends RuntimeException {
+
+        private final boolean interrupted;
+
+        Stop(boolean interrupted) {
+            super(interrupted ? "Interrupted" : "Budget exceeded", null, false, false);
+            this.interrupted = interrupted;
+        }
+
+        boolean isInterrupted() {
+            return interrupted;
+        }
+    }
+
+    private final IHeuristics order;
+    private final SolverStats stats;
+    // 0 is unlimited
+    private final long maxConflicts;
+    // System.nanoTime() to give up at, 0 is unlimited
+    private final long deadline;
+    private int decisions;
+
+    private BudgetedOrder(IHeuristics order, SolverStats stats, long maxConflicts, long deadline) {
+        this.order = order;
+        this.stats = stats;
+        this.maxConflicts = maxConflicts;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Installs the budget into the solver, which should be created by SolverFactory.
+     *
+     * @param solver       solver
+     * @param maxConflicts conflict budget, 0 for unlimited
+     * @param deadline     the value of {@link System#nanoTime()} to give up at, 0 for unlimited
+     */
+    static void install(ISolver solver, long maxConflicts, long deadline) {
+        try {
+            IHeuristics order = (IHeuristics) getOrder.invoke(solver);
+            setOrder.invoke(solver, new BudgetedOrder(order, solver.getStats(), maxConflicts, deadline));
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException(e.getClass().getSimpleName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    public int select() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new Stop(true);
+        }
+        // solve() resets the statistics, so the conflicts are counted for this check only
+        if (0 != maxConflicts && maxConflicts <= stats.conflicts) {
+            throw new Stop(false);
+        }
+        decisions++;
+        if (0 != deadline && 0 == decisions % CLOCK_DECISIONS && 0 <= System.nanoTime() - deadline) {
+            throw new Stop(false);
+        }
+        return order.select();
+    }
+
+    public void newVar() {
+        order.newVar();
+    }
+
+    public void newVar(int howmany) {
+        order.newVar(howmany);
+    }
+
+    public void setVarDecay(double d) {
+        order.setVarDecay(d);
+    }
+
+    public void undo(int x) {
+        order.undo(x);
+    }
+
+    public void updateVar(int p) {
+        order.updateVar(p);
+    }
+
+    public void varDecayActivity() {
+        order.varDecayActivity();
+    }
+
+    public int numberOfInterestingVariables() {
+        return order.numberOfInterestingVariables();
+    }
+
+    public void init() {
+        order.init();
+    }
+}
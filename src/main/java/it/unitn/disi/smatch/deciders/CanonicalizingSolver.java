@@ -0,0 +1,276 @@
+package it.unitn.disi.smatch.deciders;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SAT solver which brings the checks into a canonical form before looking them up in its cache and solving them.
+ * <p/>
+ * Node matching numbers the variables of each check in the order their atoms are met, therefore checks with
+ * the same structure often differ in the numbering and in the order of the clauses and miss a cache keyed
+ * by the text, like {@link CachingSolver}. The canonical form drops duplicated literals, tautologies and
+ * duplicated clauses, renumbers the variables by their role in the formula and sorts the literals and the clauses.
+ * <p/>
+ * The variables are ordered by a colour which depends only on the structure of the formula: it starts from
+ * the number of positive and negative occurrences and is refined twice with the colours of the clauses containing
+ * the variable. Variables of the same colour keep their original order, so symmetric formulas might still
+ * get different canonical forms, which costs a cache miss, but never a wrong answer.
+ * <p/>
+ * The canonical check is passed to the wrapped solver as DIMACS text, so wrapping {@link PersistentCachingSolver}
+ * extends the reuse across runs.
+ * <p/>
+ * The cache is an LRU map bounded by the maximum number of entries, so that a long running process, such as
+ * the server, does not keep every check it has seen.
+ * <p/>
+ * A check which exceeds the budget of the wrapped solver fails with {@link SATBudgetExceededException} and is
+ * not cached, so the next equal check is solved again.
+ *
+ * @author agent
+ */
+public class CanonicalizingSolver implements ISATSolver {
+
+    public static final int DEFAULT_MAX_ENTRIES = 100000;
+
+    private static final int REFINEMENTS = 2;
+
+    private final ISATSolver satSolver;
+    private final Map<String, Boolean> cache;
+
+    private long hits;
+    private long misses;
+
+    public CanonicalizingSolver() {
+        this(new MiniSAT());
+    }
+
+    public CanonicalizingSolver(ISATSolver satSolver) {
+        this(satSolver, DEFAULT_MAX_ENTRIES);
+    }
+
+    public CanonicalizingSolver(ISATSolver satSolver, final int maxEntries) {
+        this.satSolver = satSolver;
+        this.cache = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return maxEntries < size();
+            }
+        };
+    }
+
+    public boolean isSatisfiable(String input) throws SATSolverException {
+        String canonical = toDimacs(canonicalize(DimacsParser.parse(input)));
+        Boolean result;
+        synchronized (cache) {
+            result = cache.get(canonical);
+            if (null != result) {
+                hits++;
+                return result;
+            }
+            misses++;
+        }
+
+        // a check over the budget throws here and is not cached
+        result = satSolver.isSatisfiable(canonical);
+
+        synchronized (cache) {
+            cache.put(canonical, result);
+        }
+        return result;
+    }
+
+    public long getHits() {
+        synchronized (cache) {
+            return hits;
+        }
+    }
+
+    public long getMisses() {
+        synchronized (cache) {
+            return misses;
+        }
+    }
+
+    /**
+     * Returns the clauses in the canonical form: without duplicated literals, tautologies and duplicated clauses,
+     * with the variables renumbered from 1 and with the literals and the clauses sorted.
+     *
+     * @param clauses clauses as DIMACS literals
+     * @return canonical clauses
+     */
+    public static int[][] canonicalize(int[][] clauses) {
+        List<int[]> cleaned = new ArrayList<>(clauses.length);
+        int variables = 0;
+        for (int[] clause : clauses) {
+            int[] c = clean(clause);
+            if (null != c) {
+                cleaned.add(c);
+                for (int literal : c) {
+                    variables = Math.max(variables, Math.abs(literal));
+                }
+            }
+        }
+
+        final long[] colours = colours(cleaned, variables);
+
+        // order the used variables by colour, then by the original number
+        List<Integer> used = new ArrayList<>();
+        boolean[] seen = new boolean[variables + 1];
+        for (int[] clause : cleaned) {
+            for (int literal : clause) {
+                int variable = Math.abs(literal);
+                if (!seen[variable]) {
+                    seen[variable] = true;
+                    used.add(variable);
+                }
+            }
+        }
+        Integer[] order = used.toArray(new Integer[used.size()]);
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int result = Long.compare(colours[a], colours[b]);
+                return 0 != result ? result : Integer.compare(a, b);
+            }
+        });
+        int[] number = new int[variables + 1];
+        for (int i = 0; i < order.length; i++) {
+            number[order[i]] = i + 1;
+        }
+
+        int[][] result = new int[cleaned.size()][];
+        for (int i = 0; i < result.length; i++) {
+            int[] clause = cleaned.get(i);
+            int[] renumbered = new int[clause.length];
+            for (int j = 0; j < clause.length; j++) {
+                renumbered[j] = clause[j] < 0 ? -number[-clause[j]] : number[clause[j]];
+            }
+            result[i] = sortLiterals(renumbered);
+        }
+        Arrays.sort(result, CLAUSE_ORDER);
+
+        // drop duplicated clauses, which are adjacent now
+        int size = 0;
+        for (int i = 0; i < result.length; i++) {
+            if (0 == size || 0 != CLAUSE_ORDER.compare(result[size - 1], result[i])) {
+                result[size++] = result[i];
+            }
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Renders the clauses in DIMACS format.
+     *
+     * @param clauses clauses
+     * @return DIMACS text
+     */
+    public static String toDimacs(int[][] clauses) {
+        int variables = 0;
+        for (int[] clause : clauses) {
+            for (int literal : clause) {
+                variables = Math.max(variables, Math.abs(literal));
+            }
+        }
+        StringBuilder result = new StringBuilder();
+        result.append("p cnf ").append(variables).append(' ').append(clauses.length).append('\n');
+        for (int[] clause : clauses) {
+            for (int literal : clause) {
+                result.append(literal).append(' ');
+            }
+            result.append("0\n");
+        }
+        return result.toString();
+    }
+
+    /**
+     * Computes the colours of the variables. The colours are combined with sums, which do not depend
+     * on the order of the literals and of the clauses.
+     */
+    private static long[] colours(List<int[]> clauses, int variables) {
+        long[] result = new long[variables + 1];
+        for (int[] clause : clauses) {
+            for (int literal : clause) {
+                result[Math.abs(literal)] += 0 < literal ? 1 : 1L << 32;
+            }
+        }
+        for (int round = 0; round < REFINEMENTS; round++) {
+            long[] refined = new long[variables + 1];
+            for (int[] clause : clauses) {
+                long clauseColour = clause.length;
+                for (int literal : clause) {
+                    clauseColour += mix(result[Math.abs(literal)], literal < 0);
+                }
+                for (int literal : clause) {
+                    refined[Math.abs(literal)] += mix(clauseColour, literal < 0);
+                }
+            }
+            for (int v = 1; v <= variables; v++) {
+                refined[v] = mix(result[v] + refined[v], false);
+            }
+            result = refined;
+        }
+        return result;
+    }
+
+    private static long mix(long value, boolean negative) {
+        long result = (value ^ (negative ? 0x9e3779b97f4a7c15L : 0)) * 0xbf58476d1ce4e5b9L;
+        result ^= result >>> 31;
+        result *= 0x94d049bb133111ebL;
+        return result ^ (result >>> 29);
+    }
+
+    /**
+     * Returns the clause with the duplicated literals removed, or null if it is a tautology.
+     */
+    private static int[] clean(int[] clause) {
+        int[] sorted = sortLiterals(clause.clone());
+        int size = 0;
+        for (int literal : sorted) {
+            if (0 < size && sorted[size - 1] == literal) {
+                continue;
+            }
+            if (0 < size && sorted[size - 1] == -literal) {
+                return null;
+            }
+            sorted[size++] = literal;
+        }
+        return size == sorted.length ? sorted : Arrays.copyOf(sorted, size);
+    }
+
+    /**
+     * Sorts the literals by variable, negative first.
+     */
+    private static int[] sortLiterals(int[] clause) {
+        for (int i = 1; i < clause.length; i++) {
+            int literal = clause[i];
+            int j = i - 1;
+            while (0 <= j && compare(literal, clause[j]) < 0) {
+                clause[j + 1] = clause[j];
+                j--;
+            }
+            clause[j + 1] = literal;
+        }
+        return clause;
+    }
+
+    private static int compare(int a, int b) {
+        int result = Integer.compare(Math.abs(a), Math.abs(b));
+        return 0 != result ? result : Integer.compare(a, b);
+    }
+
+    private static final Comparator<int[]> CLAUSE_ORDER = new Comparator<int[]>() {
+        @Override
+        public int compare(int[] a, int[] b) {
+            for (int i = 0; i < a.length && i < b.length; i++) {
+                if (a[i] != b[i]) {
+                    return CanonicalizingSolver.compare(a[i], b[i]);
+                }
+            }
+            return Integer.compare(a.length, b.length);
+        }
+    };
+}
@@ -0,0 +1,74 @@
+package it.unitn.disi.smatch.deciders;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parses CNF formulas in DIMACS format into clauses, without readers and tokenizers.
+ * <p/>
+ * Comment (c) and problem (p) lines are skipped. Clauses are terminated by 0 and may span lines,
+ * a last clause without the terminating 0 is accepted as well.
+ *
+ * @author agent
+ */
+public class DimacsParser {
+
+    private DimacsParser() {
+    }
+
+    /**
+     * Parses the formula into clauses. Each clause is an array of DIMACS literals without the terminating 0.
+     *
+     * @param input formula in DIMACS format
+     * @return clauses
+     * @throws SATSolverException if the input contains something other than literals
+     */
+    public static int[][] parse(String input) throws SATSolverException {
+        List<int[]> clauses = new ArrayList<>();
+        int[] clause = new int[16];
+        int size = 0;
+        int length = input.length();
+        int i = 0;
+        while (i < length) {
+            char c = input.charAt(i);
+            if ('c' == c || 'p' == c || '%' == c) {
+                // skip the line
+                while (i < length && '\n' != input.charAt(i)) {
+                    i++;
+                }
+            } else if ('-' == c || ('0' <= c && c <= '9')) {
+                boolean negative = '-' == c;
+                if (negative) {
+                    i++;
+                }
+                int start = i;
+                int value = 0;
+                while (i < length && '0' <= (c = input.charAt(i)) && c <= '9') {
+                    value = 10 * value + (c - '0');
+                    i++;
+                }
+                if (start == i) {
+                    throw new SATSolverException("Literal expected at position " + start);
+                }
+                if (0 == value) {
+                    clauses.add(Arrays.copyOf(clause, size));
+                    size = 0;
+                } else {
+                    if (size == clause.length) {
+                        clause = Arrays.copyOf(clause, 2 * size);
+                    }
+                    clause[size++] = negative ? -value : value;
+                }
+            } else if (Character.isWhitespace(c)) {
+                i++;
+            } else {
+                throw new SATSolverException("Unexpected character '" + c + "' at position " + i);
+            }
+        }
+        if (0 < size) {
+            clauses.add(Arrays.copyOf(clause, size));
+        }
+        return clauses.toArray(new int[clauses.size()][]);
+    }
+}
@@ -0,0 +1,31 @@
+package it.unitn.disi.smatch.deciders;
+
+/**
+ * SAT solver which accepts clauses directly, without the formula being serialized into DIMACS format.
+ * Literals follow DIMACS conventions: variables are numbered from 1 and a negative number is a negated variable.
+ *
+ * @author agent
+ */
+public interface IClauseSATSolver extends ISATSolver {
+
+    /**
+     * Checks the satisfiability of the clauses.
+     *
+     * @param clauses clauses, each clause is an array of literals
+     * @return whether the clauses are satisfiable
+     * @throws SATSolverException SATSolverException
+     */
+    boolean isSatisfiable(int[][] clauses) throws SATSolverException;
+
+    /**
+     * Checks the satisfiability of the clauses stored one after another in a flat buffer, which can be reused
+     * between the calls. Clause i consists of the literals from offsets[i] inclusive to offsets[i + 1] exclusive.
+     *
+     * @param literals    literals of all clauses
+     * @param offsets     clause offsets in the literals, at least clauseCount + 1 of them
+     * @param clauseCount number of clauses
+     * @return whether the clauses are satisfiable
+     * @throws SATSolverException SATSolverException
+     */
+    boolean isSatisfiable(int[] literals, int[] offsets, int clauseCount) throws SATSolverException;
+}
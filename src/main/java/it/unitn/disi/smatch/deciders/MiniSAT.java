@@ -1,30 +1,168 @@
 package it.unitn.disi.smatch.deciders;
 
-import org.opensat.ContradictionException;
-import org.opensat.Dimacs;
 import org.opensat.ISolver;
-import org.opensat.ParseFormatException;
+import org.opensat.datatype.Lits;
+import org.opensat.datatype.VecInt;
 import org.opensat.minisat.SolverFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
-import java.io.LineNumberReader;
-import java.io.StringReader;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class MiniSAT implements ISATSolver {
+/**
+ * MiniSAT based SAT solver. Besides DIMACS text, accepts clauses directly, which are fed into the solver
+ * without any serialization and parsing.
+ * <p/>
+ * Optionally each check is limited by a wall-clock timeout and a number of conflicts. A check which exceeds
+ * its budget has no answer: it fails with {@link SATBudgetExceededException} and is counted as timed out, so that
+ * caching solvers do not store it. {@link BudgetFallbackSolver} answers such checks with a fixed result.
+ * <p/>
+ * An interrupted check fails with an exception, with or without a budget, so that a check cancelled by
+ * {@link PortfolioSATSolver} gives its thread back.
+ */
+public class MiniSAT implements IClauseSATSolver {
+
+    private static final Logger log = LoggerFactory.getLogger(MiniSAT.class);
+
+    // milliseconds, 0 is unlimited
+    private final long timeout;
+    // 0 is unlimited
+    private final long maxConflicts;
+
+    private final AtomicLong timedOut = new AtomicLong();
+
+    public MiniSAT() {
+        this(0, 0);
+    }
+
+    /**
+     * Creates a solver with a budget for each check.
+     *
+     * @param timeout      wall-clock time limit in milliseconds, 0 for unlimited
+     * @param maxConflicts conflict limit, 0 for unlimited
+     */
+    public MiniSAT(long timeout, long maxConflicts) {
+        this.timeout = timeout;
+        this.maxConflicts = maxConflicts;
+    }
 
     public boolean isSatisfiable(String input) throws SATSolverException {
-        ISolver solver = SolverFactory.newMiniLearning();
+        return isSatisfiable(DimacsParser.parse(input));
+    }
+
+    public boolean isSatisfiable(int[][] clauses) throws SATSolverException {
         try {
-            LineNumberReader lnrCNF = new LineNumberReader(new BufferedReader(new StringReader(input)));
-            Dimacs parser = new Dimacs();
-            parser.parseInstance(lnrCNF, solver);
-            return solver.solve();
-        } catch (ParseFormatException e) {
+            ISolver solver = newSolver(maxVariable(clauses));
+            return addClauses(solver, new VecInt(), clauses) && solve(solver);
+        } catch (RuntimeException e) {
             throw new SATSolverException(e.getClass().getSimpleName() + ": " + e.getMessage(), e);
-        } catch (ContradictionException e) {
-            return false;
-        } catch (Exception e) {
+        }
+    }
+
+    public boolean isSatisfiable(int[] literals, int[] offsets, int clauseCount) throws SATSolverException {
+        try {
+            int variables = 0;
+            for (int i = offsets[0]; i < offsets[clauseCount]; i++) {
+                variables = Math.max(variables, Math.abs(literals[i]));
+            }
+            ISolver solver = newSolver(variables);
+            Lits lits = solver.getVocabulary();
+            VecInt clause = new VecInt();
+            for (int c = 0; c < clauseCount; c++) {
+                clause.clear();
+                for (int i = offsets[c]; i < offsets[c + 1]; i++) {
+                    clause.push(lits.getFromPool(literals[i]));
+                }
+                if (!solver.addClause(clause)) {
+                    return false;
+                }
+            }
+            return solve(solver);
+        } catch (RuntimeException e) {
             throw new SATSolverException(e.getClass().getSimpleName() + ": " + e.getMessage(), e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Solves the clauses loaded into the solver within the budget.
+     *
+     * @param solver solver with the clauses, which cannot be used afterwards
+     * @return whether the clauses are satisfiable
+     * @throws SATBudgetExceededException if the budget is exceeded
+     * @throws SATSolverException         if the thread is interrupted
+     */
+    boolean solve(ISolver solver) throws SATSolverException {
+        long deadline = 0;
+        if (0 != timeout) {
+            // keep it non-zero, 0 means no deadline
+            deadline = (System.nanoTime() + timeout * 1000000) | 1;
+        }
+        BudgetedOrder.install(solver, maxConflicts, deadline);
+        try {
+            return solver.solve();
+        } catch (BudgetedOrder.Stop e) {
+            if (e.isInterrupted()) {
+                throw new SATSolverException("Interrupted");
+            }
+            long count = timedOut.incrementAndGet();
+            if (log.isDebugEnabled()) {
+                log.debug("Check exceeded the budget, timed out checks: " + count);
+            }
+            throw new SATBudgetExceededException("Check exceeded the budget of " + timeout + " ms and "
+                    + maxConflicts + " conflicts");
+        }
+    }
+
+    /**
+     * Returns the number of checks which exceeded the budget.
+     *
+     * @return the number of timed out checks
+     */
+    public long getTimedOut() {
+        return timedOut.get();
+    }
+
+    /**
+     * Creates a solver for the given number of variables.
+     *
+     * @param variables the number of variables
+     * @return a new solver
+     */
+    static ISolver newSolver(int variables) {
+        ISolver result = SolverFactory.newMiniLearning();
+        result.ensureVar(Math.max(1, variables));
+        return result;
+    }
+
+    /**
+     * Adds the clauses to the solver.
+     *
+     * @param solver  solver
+     * @param clause  reusable vector for the clause literals
+     * @param clauses clauses to add
+     * @return false if the clauses are contradictory
+     */
+    static boolean addClauses(ISolver solver, VecInt clause, int[][] clauses) {
+        Lits lits = solver.getVocabulary();
+        for (int[] literals : clauses) {
+            clause.clear();
+            for (int literal : literals) {
+                clause.push(lits.getFromPool(literal));
+            }
+            if (!solver.addClause(clause)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static int maxVariable(int[][] clauses) {
+        int result = 0;
+        for (int[] literals : clauses) {
+            for (int literal : literals) {
+                result = Math.max(result, Math.abs(literal));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,302 @@
+package it.unitn.disi.smatch.deciders;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * SAT solver which caches the results on disk, so that they survive the process and can be shared by
+ * several processes and solvers.
+ * <p/>
+ * The key is a 64-bit hash of the clauses with the literals of each clause and the clauses themselves sorted,
+ * so the problem line, the formatting and the order of the clauses do not matter. The cache is loaded into memory
+ * when the solver is created and kept there as an LRU map bounded by the maximum number of entries.
+ * <p/>
+ * The file starts with {@link #MAGIC} and {@link #VERSION} and continues with records of the 8 bytes of the hash
+ * followed by 1 byte of the result. New results are buffered and appended under an exclusive file lock every
+ * {@link #FLUSH_RECORDS} records, on {@link #close()} and when the JVM exits. The shutdown hook is registered only
+ * while there are buffered results, so closed solvers are not kept alive by it. A later record for the same key
+ * overrides an earlier one. When the file holds more than twice the maximum number of entries, it is compacted
+ * at load time to the entries kept in memory.
+ * <p/>
+ * A check which exceeds the budget of the underlying solver has no result and fails with
+ * {@link SATBudgetExceededException} before anything is stored. To give such checks a fixed answer, put
+ * {@link BudgetFallbackSolver} above this solver.
+ *
+ * @author agent
+ */
+public class PersistentCachingSolver implements ISATSolver {
+
+    private static final Logger log = LoggerFactory.getLogger(PersistentCachingSolver.class);
+
+    public static final int MAGIC = 0x534D5343;
+    public static final int VERSION = 1;
+    public static final int DEFAULT_MAX_ENTRIES = 1000000;
+    public static final int FLUSH_RECORDS = 256;
+
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_SIZE = 9;
+
+    private final ISATSolver satSolver;
+    private final File file;
+    private final Map<Long, Boolean> cache;
+
+    private final ByteBuffer pending = ByteBuffer.allocate(FLUSH_RECORDS * RECORD_SIZE);
+
+    // flushes the buffered results when the JVM exits
+    private final Thread shutdownHook;
+    private boolean hooked;
+
+    private long hits;
+    private long misses;
+
+    public PersistentCachingSolver(ISATSolver satSolver, String fileName) throws SATSolverException {
+        this(satSolver, fileName, DEFAULT_MAX_ENTRIES);
+    }
+
+    public PersistentCachingSolver(ISATSolver satSolver, String fileName, final int maxEntries) throws SATSolverException {
+        this.satSolver = satSolver;
+        this.file = new File(fileName);
+        this.cache = new LinkedHashMap<Long, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+                return maxEntries < size();
+            }
+        };
+
+        try {
+            long records = load();
+            if (log.isInfoEnabled()) {
+                log.info("Loaded SAT results: " + cache.size() + " from records: " + records + " in " + file.getPath());
+            }
+            if (2L * maxEntries < records) {
+                compact();
+            }
+        } catch (IOException e) {
+            throw new SATSolverException(e.getClass().getSimpleName() + ": " + e.getMessage(), e);
+        }
+
+        shutdownHook = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                close();
+            }
+        }, "sat-cache-flush");
+    }
+
+    public boolean isSatisfiable(String input) throws SATSolverException {
+        Long key = hash(DimacsParser.parse(input));
+        Boolean result;
+        synchronized (this) {
+            result = cache.get(key);
+            if (null != result) {
+                hits++;
+                return result;
+            }
+            misses++;
+        }
+
+        // a check over the budget throws here and is not stored
+        result = satSolver.isSatisfiable(input);
+
+        synchronized (this) {
+            cache.put(key, result);
+            pending.putLong(key);
+            pending.put(result ? (byte) 1 : (byte) 0);
+            if (!pending.hasRemaining()) {
+                flush();
+            } else if (!hooked) {
+                try {
+                    Runtime.getRuntime().addShutdownHook(shutdownHook);
+                    hooked = true;
+                } catch (IllegalStateException e) {
+                    // the JVM is shutting down already
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Appends the buffered results to the file and removes the shutdown hook.
+     */
+    public synchronized void close() {
+        flush();
+        if (hooked) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // the JVM is shutting down, possibly running this hook
+            }
+            hooked = false;
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private void flush() {
+        if (0 == pending.position()) {
+            return;
+        }
+        pending.flip();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel();
+             FileLock ignored = channel.lock()) {
+            if (0 == channel.size()) {
+                writeHeader(channel);
+            }
+            channel.position(channel.size());
+            while (pending.hasRemaining()) {
+                channel.write(pending);
+            }
+        } catch (IOException e) {
+            // the results stay in memory
+            if (log.isWarnEnabled()) {
+                log.warn("Cannot write SAT results to " + file.getPath() + ": " + e.getClass().getSimpleName() + ": " + e.getMessage());
+            }
+        } finally {
+            pending.clear();
+        }
+    }
+
+    /**
+     * Reads the file into the cache.
+     *
+     * @return the number of records read
+     */
+    private long load() throws IOException {
+        if (!file.exists() || 0 == file.length()) {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (null != parent && !parent.exists() && !parent.mkdirs()) {
+                throw new IOException("Cannot create directory: " + parent.getPath());
+            }
+            return 0;
+        }
+        long records = 0;
+        try (InputStream in = new FileInputStream(file)) {
+            DataInputStream data = new DataInputStream(new BufferedInputStream(in, 65536));
+            if (MAGIC != data.readInt() || VERSION != data.readInt()) {
+                throw new IOException("Not a SAT cache file: " + file.getPath());
+            }
+            // a record might be incomplete if a writer was killed
+            long complete = (file.length() - HEADER_SIZE) / RECORD_SIZE;
+            try {
+                for (; records < complete; records++) {
+                    long key = data.readLong();
+                    cache.put(key, 0 != data.readByte());
+                }
+            } catch (EOFException e) {
+                // the file was truncated meanwhile
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Rewrites the file with the entries kept in memory.
+     */
+    private void compact() throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel();
+             FileLock ignored = channel.lock()) {
+            try (RandomAccessFile tmpRaf = new RandomAccessFile(tmp, "rw");
+                 FileChannel out = tmpRaf.getChannel()) {
+                out.truncate(0);
+                writeHeader(out);
+                ByteBuffer buffer = ByteBuffer.allocate(FLUSH_RECORDS * RECORD_SIZE);
+                for (Map.Entry<Long, Boolean> entry : cache.entrySet()) {
+                    if (!buffer.hasRemaining()) {
+                        buffer.flip();
+                        while (buffer.hasRemaining()) {
+                            out.write(buffer);
+                        }
+                        buffer.clear();
+                    }
+                    buffer.putLong(entry.getKey());
+                    buffer.put(entry.getValue() ? (byte) 1 : (byte) 0);
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        if (log.isInfoEnabled()) {
+            log.info("Compacted " + file.getPath() + " to SAT results: " + cache.size());
+        }
+    }
+
+    private static void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+    }
+
+    /**
+     * Returns the hash of the clauses which does not depend on the order of the literals in the clauses and on
+     * the order of the clauses.
+     *
+     * @param clauses clauses
+     * @return 64-bit hash
+     */
+    public static long hash(int[][] clauses) {
+        int[][] sorted = new int[clauses.length][];
+        for (int i = 0; i < clauses.length; i++) {
+            sorted[i] = clauses[i].clone();
+            Arrays.sort(sorted[i]);
+        }
+        Arrays.sort(sorted, CLAUSE_ORDER);
+        long result = 0xcbf29ce484222325L;
+        for (int[] clause : sorted) {
+            for (int literal : clause) {
+                result = mix(result, literal);
+            }
+            result = mix(result, 0);
+        }
+        return result;
+    }
+
+    private static long mix(long hash, int value) {
+        long result = (hash ^ value) * 0x100000001b3L;
+        return result ^ (result >>> 29);
+    }
+
+    private static final Comparator<int[]> CLAUSE_ORDER = new Comparator<int[]>() {
+        @Override
+        public int compare(int[] a, int[] b) {
+            for (int i = 0; i < a.length && i < b.length; i++) {
+                if (a[i] != b[i]) {
+                    return a[i] < b[i] ? -1 : 1;
+                }
+            }
+            return Integer.compare(a.length, b.length);
+        }
+    };
+}
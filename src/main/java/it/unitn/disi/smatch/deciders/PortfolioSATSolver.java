@@ -0,0 +1,198 @@
+package it.unitn.disi.smatch.deciders;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * SAT solver which runs several solvers concurrently on the same check, returns the first answer and cancels
+ * the rest. By default races {@link MiniSAT} against {@link SAT4J}, which are slow on different formulas.
+ * <p/>
+ * Cancellation interrupts the losers. {@link MiniSAT} stops at the next decision. Solvers which do not react to
+ * interruption keep their thread until they finish. The threads are taken from a fixed pool of daemon threads,
+ * one per solver by default, so the next checks wait for the threads of such losers instead of starting new ones.
+ * <p/>
+ * For each solver the portfolio counts the wins and keeps a histogram of the winning latencies, where bucket i
+ * counts the answers taken from 2^(i-1) inclusive to 2^i microseconds exclusive, to help choose the solvers.
+ *
+ * @author agent
+ */
+public class PortfolioSATSolver implements ISATSolver {
+
+    private static final Logger log = LoggerFactory.getLogger(PortfolioSATSolver.class);
+
+    public static final int HISTOGRAM_SIZE = 32;
+
+    private final List<ISATSolver> solvers;
+    private final ExecutorService executor;
+
+    private final AtomicLongArray wins;
+    private final AtomicLongArray latencies;
+
+    public PortfolioSATSolver() {
+        this(Arrays.asList(new MiniSAT(), new SAT4J()));
+    }
+
+    public PortfolioSATSolver(List<ISATSolver> solvers) {
+        this(solvers, solvers.size());
+    }
+
+    /**
+     * Creates a portfolio of the solvers.
+     *
+     * @param solvers solvers to race
+     * @param threads the number of solver threads, at least one per solver lets the solvers of a check run at once
+     */
+    public PortfolioSATSolver(List<ISATSolver> solvers, int threads) {
+        if (solvers.isEmpty()) {
+            throw new IllegalArgumentException("Portfolio needs at least one solver");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("Portfolio needs at least one thread");
+        }
+        this.solvers = new ArrayList<>(solvers);
+        this.wins = new AtomicLongArray(solvers.size());
+        this.latencies = new AtomicLongArray(solvers.size() * HISTOGRAM_SIZE);
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread result = new Thread(r, "sat-portfolio-" + counter.incrementAndGet());
+                result.setDaemon(true);
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Answer of one of the solvers.
+     */
+    private static class Answer {
+        final int solver;
+        final boolean result;
+
+        Answer(int solver, boolean result) {
+            this.solver = solver;
+            this.result = result;
+        }
+    }
+
+    public boolean isSatisfiable(final String input) throws SATSolverException {
+        final long start = System.nanoTime();
+        CompletionService<Answer> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<Answer>> futures = new ArrayList<>(solvers.size());
+        for (int i = 0; i < solvers.size(); i++) {
+            final int index = i;
+            futures.add(completionService.submit(new Callable<Answer>() {
+                @Override
+                public Answer call() throws SATSolverException {
+                    return new Answer(index, solvers.get(index).isSatisfiable(input));
+                }
+            }));
+        }
+
+        SATSolverException error = null;
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    Answer answer = completionService.take().get();
+                    wins.incrementAndGet(answer.solver);
+                    latencies.incrementAndGet(answer.solver * HISTOGRAM_SIZE + bucket((System.nanoTime() - start) / 1000));
+                    return answer.result;
+                } catch (ExecutionException e) {
+                    // wait for the other solvers
+                    if (null == error) {
+                        Throwable cause = e.getCause();
+                        error = cause instanceof SATSolverException ? (SATSolverException) cause :
+                                new SATSolverException(cause.getClass().getSimpleName() + ": " + cause.getMessage(), cause);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SATSolverException(e.getClass().getSimpleName() + ": " + e.getMessage(), e);
+        } finally {
+            for (Future<Answer> future : futures) {
+                future.cancel(true);
+            }
+        }
+        throw error;
+    }
+
+    private static int bucket(long micros) {
+        return Math.min(HISTOGRAM_SIZE - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    /**
+     * Returns the solvers of the portfolio.
+     *
+     * @return the solvers
+     */
+    public List<ISATSolver> getSolvers() {
+        return solvers;
+    }
+
+    /**
+     * Returns how many times the solver answered first.
+     *
+     * @param solver index of the solver
+     * @return the number of wins
+     */
+    public long getWins(int solver) {
+        return wins.get(solver);
+    }
+
+    /**
+     * Returns the histogram of the latencies of the answers of the solver.
+     * Bucket i counts the answers taken from 2^(i-1) inclusive to 2^i microseconds exclusive.
+     *
+     * @param solver index of the solver
+     * @return latency histogram
+     */
+    public long[] getLatencyHistogram(int solver) {
+        long[] result = new long[HISTOGRAM_SIZE];
+        for (int i = 0; i < HISTOGRAM_SIZE; i++) {
+            result[i] = latencies.get(solver * HISTOGRAM_SIZE + i);
+        }
+        return result;
+    }
+
+    /**
+     * Logs the wins and the latency histograms of the solvers.
+     */
+    public void logStatistics() {
+        if (log.isInfoEnabled()) {
+            for (int i = 0; i < solvers.size(); i++) {
+                StringBuilder histogram = new StringBuilder();
+                long[] buckets = getLatencyHistogram(i);
+                for (int b = 0; b < buckets.length; b++) {
+                    if (0 < buckets[b]) {
+                        histogram.append(" <").append(1L << b).append("us:").append(buckets[b]);
+                    }
+                }
+                log.info(solvers.get(i).getClass().getSimpleName() + " wins: " + getWins(i) + ", latencies:" + histogram);
+            }
+        }
+    }
+
+    /**
+     * Stops the solver threads.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,120 @@
+package it.unitn.disi.smatch.deciders;
+
+import org.opensat.ISolver;
+import org.opensat.datatype.VecInt;
+
+/**
+ * MiniSAT solver which reuses the parsed clauses shared between consecutive satisfiability checks.
+ * <p/>
+ * Node matching issues many checks sharing the same leading clauses, such as axioms and the formula of the source
+ * node. The text of the clauses shared with the previous check is kept together with the parsed clauses, so a check
+ * which starts with the same text only has its new clauses parsed. All clauses go into the solver directly as
+ * literals, bypassing the DIMACS reader of MiniSAT.
+ * <p/>
+ * The solver itself is not kept between the checks. Retracting the clauses of a check requires solving under
+ * assumptions, and the bundled MiniSAT simplifies its clause database at the assumption level, permanently
+ * removing the clauses satisfied by the literals the assumptions imply. Such a solver gives wrong answers to the
+ * following checks.
+ * <p/>
+ * Each thread keeps its own shared clauses, so the instance may be shared.
+ *
+ * @author agent
+ */
+public class PrefixCachingMiniSAT implements ISATSolver {
+
+    private final MiniSAT miniSAT;
+
+    private final ThreadLocal<State> state = new ThreadLocal<State>() {
+        @Override
+        protected State initialValue() {
+            return new State();
+        }
+    };
+
+    public PrefixCachingMiniSAT() {
+        this(new MiniSAT());
+    }
+
+    /**
+     * Creates a solver which solves the checks with the budget of the given MiniSAT.
+     *
+     * @param miniSAT MiniSAT decider with the budget
+     */
+    public PrefixCachingMiniSAT(MiniSAT miniSAT) {
+        this.miniSAT = miniSAT;
+    }
+
+    /**
+     * Clauses shared by the checks of one thread.
+     */
+    private static class State {
+        // clauses of the previous check, without the problem line
+        private String previous = "";
+        // shared clauses, as text and parsed
+        private String sharedText = "";
+        private int[][] shared = new int[0][];
+        private int sharedMaxVariable;
+
+        private final VecInt clause = new VecInt();
+    }
+
+    public boolean isSatisfiable(String input) throws SATSolverException {
+        State s = state.get();
+        String body = input.substring(skipProblemLine(input));
+
+        // the shared text is a prefix of the previous check, therefore it is enough to compare the lengths
+        int common = commonClauses(body, s.previous);
+        if (common != s.sharedText.length()) {
+            s.sharedText = body.substring(0, common);
+            s.shared = DimacsParser.parse(s.sharedText);
+            s.sharedMaxVariable = MiniSAT.maxVariable(s.shared);
+        }
+        s.previous = body;
+        int[][] own = DimacsParser.parse(body.substring(s.sharedText.length()));
+
+        try {
+            ISolver solver = MiniSAT.newSolver(Math.max(s.sharedMaxVariable, MiniSAT.maxVariable(own)));
+            return MiniSAT.addClauses(solver, s.clause, s.shared) && MiniSAT.addClauses(solver, s.clause, own) && miniSAT.solve(solver);
+        } catch (RuntimeException e) {
+            throw new SATSolverException(e.getClass().getSimpleName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the position after the comments and the problem line, if any.
+     */
+    private static int skipProblemLine(String input) {
+        int position = 0;
+        while (position < input.length() && ('c' == input.charAt(position) || 'p' == input.charAt(position))) {
+            int end = input.indexOf('\n', position);
+            position = -1 == end ? input.length() : end + 1;
+        }
+        return position;
+    }
+
+    /**
+     * Returns the length of the longest common prefix of the texts which consists of whole clauses,
+     * that is, which ends with a line terminating a clause.
+     */
+    private static int commonClauses(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        int common = 0;
+        while (common < length && a.charAt(common) == b.charAt(common)) {
+            common++;
+        }
+        // step back to the end of the last common line ending with 0
+        int end = a.lastIndexOf('\n', common - 1);
+        while (0 <= end && !endsClause(a, end)) {
+            end = a.lastIndexOf('\n', end - 1);
+        }
+        return end + 1;
+    }
+
+    private static boolean endsClause(String text, int newline) {
+        int i = newline - 1;
+        while (0 <= i && Character.isWhitespace(text.charAt(i))) {
+            i--;
+        }
+        return 0 <= i && '0' == text.charAt(i) && (0 == i || !Character.isDigit(text.charAt(i - 1)) && '-' != text.charAt(i - 1));
+    }
+}
@@ -0,0 +1,14 @@
+package it.unitn.disi.smatch.deciders;
+
+/**
+ * Thrown when a satisfiability check exceeds its budget of time or conflicts. The check has no answer,
+ * therefore the solvers which cache results let it through without storing anything.
+ *
+ * @author agent
+ */
+public class SATBudgetExceededException extends SATSolverException {
+
+    public SATBudgetExceededException(String errorDescription) {
+        super(errorDescription);
+    }
+}
@@ -625,6 +625,12 @@ public class SMatchGUI extends Observable implements Observer, Executor {
         }
     }
 
+    /**
+     * A tree model that shows the links of the mapping as children of the nodes. The link nodes are created only for
+     * the nodes the tree asks about, that is, for the children of the expanded nodes, and they are kept in the user
+     * object of the node. When a node is collapsed the link nodes below it are dropped, so that the memory taken by
+     * the link nodes follows the visible part of the tree, rather than the size of the context.
+     */
     private class MappingTreeModel extends BaseCoalesceTreeModel {
 
         //whether this tree is a source tree of a mapping
@@ -632,6 +638,9 @@ public class SMatchGUI extends Observable implements Observer, Executor {
 
         protected IContextMapping<INode> mapping;
 
+        // nodes with the link nodes in their user objects
+        protected final Set<INode> materialized = Collections.newSetFromMap(new IdentityHashMap<INode, Boolean>());
+
         public MappingTreeModel(IBaseNode root, boolean isSource, IContextMapping<INode> mapping) {
             super(root);
             this.isSource = isSource;
@@ -655,11 +664,7 @@ public class SMatchGUI extends Observable implements Observer, Executor {
             if (null != c) {
                 uncoalesce(parent);
             }
-            @SuppressWarnings("unchecked")
-            List<DefaultMutableTreeNode> linkNodes = (List<DefaultMutableTreeNode>) parent.nodeData().getUserObject();
-            if (null == linkNodes) {
-                linkNodes = updateUserObject(parent);
-            }
+            List<DefaultMutableTreeNode> linkNodes = getLinkNodes(parent);
 
             if (0 <= start && end < getChildCount(parent) && start < end) {
                 DefaultMutableTreeNode dmtn = new DefaultMutableTreeNode();
@@ -687,13 +692,63 @@ public class SMatchGUI extends Observable implements Observer, Executor {
 
         @Override
         public Object getRoot() {
-            if (null != root && null == root.nodeData().getUserObject()) {
-                updateUserObject(root);
+            if (null != root) {
+                getLinkNodes(root);
             }
 
             return root;
         }
 
+        /**
+         * Returns the link nodes of the <code>node</code>, creating them if the node has none yet.
+         *
+         * @param node node
+         * @return the link nodes of the node
+         */
+        @SuppressWarnings("unchecked")
+        public List<DefaultMutableTreeNode> getLinkNodes(final IBaseNode node) {
+            Object o = node.nodeData().getUserObject();
+            if (o instanceof List && materialized.contains(node)) {
+                return (List<DefaultMutableTreeNode>) o;
+            }
+            return updateUserObject(node);
+        }
+
+        /**
+         * Drops the link nodes of the nodes below the <code>node</code>. They are created again when the tree asks
+         * for them.
+         *
+         * @param node collapsed node
+         */
+        public void evict(final IBaseNode node) {
+            Iterator<INode> i = materialized.iterator();
+            while (i.hasNext()) {
+                INode n = i.next();
+                if (n != node && isAncestor(node, n)) {
+                    n.nodeData().setUserObject(null);
+                    i.remove();
+                }
+            }
+        }
+
+        /**
+         * Drops the link nodes of all the nodes.
+         */
+        public void evictAll() {
+            for (INode n : materialized) {
+                n.nodeData().setUserObject(null);
+            }
+            materialized.clear();
+        }
+
+        private boolean isAncestor(final IBaseNode ancestor, final INode node) {
+            IBaseNode curNode = node;
+            while (null != curNode && ancestor != curNode) {
+                curNode = curNode.getParent();
+            }
+            return null != curNode;
+        }
+
         public List<DefaultMutableTreeNode> updateUserObject(final IBaseNode bNode) {
             INode node = (INode) bNode;
             List<DefaultMutableTreeNode> result = Collections.emptyList();
@@ -710,6 +765,7 @@ public class SMatchGUI extends Observable implements Observer, Executor {
                 }
             }
             node.nodeData().setUserObject(result);
+            materialized.add(node);
             return result;
         }
 
@@ -723,21 +779,13 @@ public class SMatchGUI extends Observable implements Observer, Executor {
                     if (0 <= index && index < parentNode.getChildCount()) {
                         result = parentNode.getChildAt(index);
                     } else {
-                        @SuppressWarnings("unchecked")
-                        List<DefaultMutableTreeNode> linkNodes = (List<DefaultMutableTreeNode>) parentNode.nodeData().getUserObject();
-                        if (null == linkNodes) {
-                            linkNodes = updateUserObject(parentNode);
-                        }
+                        List<DefaultMutableTreeNode> linkNodes = getLinkNodes(parentNode);
                         if (parentNode.getChildCount() <= index && index < (parentNode.getChildCount() + linkNodes.size())) {
                             result = linkNodes.get(index - parentNode.getChildCount());
                         }
                     }
                 } else {
-                    @SuppressWarnings("unchecked")
-                    List<DefaultMutableTreeNode> linkNodes = (List<DefaultMutableTreeNode>) parentNode.nodeData().getUserObject();
-                    if (null == linkNodes) {
-                        linkNodes = updateUserObject(parentNode);
-                    }
+                    List<DefaultMutableTreeNode> linkNodes = getLinkNodes(parentNode);
                     final int coalescedLength = c.range.y - c.range.x;
                     final int coalescedIdx = parentNode.getChildCount() + linkNodes.size() - coalescedLength;
                     if (0 <= index && index < coalescedIdx) {
@@ -771,11 +819,7 @@ public class SMatchGUI extends Observable implements Observer, Executor {
             int result = 0;
             if (parent instanceof INode) {
                 INode parentNode = (INode) parent;
-                @SuppressWarnings("unchecked")
-                List<DefaultMutableTreeNode> linkNodes = (List<DefaultMutableTreeNode>) parentNode.nodeData().getUserObject();
-                if (null == linkNodes) {
-                    linkNodes = updateUserObject(parentNode);
-                }
+                List<DefaultMutableTreeNode> linkNodes = getLinkNodes(parentNode);
                 Coalesce c = coalesce.get(parentNode);
                 if (null == c) {
                     result = parentNode.getChildCount() + linkNodes.size();
@@ -792,11 +836,7 @@ public class SMatchGUI extends Observable implements Observer, Executor {
             boolean result = true;
             if (node instanceof INode) {
                 INode iNode = (INode) node;
-                @SuppressWarnings("unchecked")
-                List<DefaultMutableTreeNode> linkNodes = (List<DefaultMutableTreeNode>) iNode.nodeData().getUserObject();
-                if (null == linkNodes) {
-                    linkNodes = updateUserObject(iNode);
-                }
+                List<DefaultMutableTreeNode> linkNodes = getLinkNodes(iNode);
 
                 result = 0 == iNode.getChildCount() && 0 == linkNodes.size();
             }
@@ -868,11 +908,7 @@ public class SMatchGUI extends Observable implements Observer, Executor {
                         } else {
                             if (child instanceof DefaultMutableTreeNode) {
                                 DefaultMutableTreeNode dmtn = (DefaultMutableTreeNode) child;
-                                @SuppressWarnings("unchecked")
-                                List<DefaultMutableTreeNode> linkNodes = (List<DefaultMutableTreeNode>) pNode.nodeData().getUserObject();
-                                if (null == linkNodes) {
-                                    linkNodes = updateUserObject(pNode);
-                                }
+                                List<DefaultMutableTreeNode> linkNodes = getLinkNodes(pNode);
                                 result = pNode.getChildCount() + linkNodes.indexOf(dmtn);
                             }
                         }
@@ -895,11 +931,7 @@ public class SMatchGUI extends Observable implements Observer, Executor {
                                     //sub node
                                     result = c.range.x;
                                 } else {
-                                    @SuppressWarnings("unchecked")
-                                    List<DefaultMutableTreeNode> linkNodes = (List<DefaultMutableTreeNode>) pNode.nodeData().getUserObject();
-                                    if (null == linkNodes) {
-                                        linkNodes = updateUserObject(pNode);
-                                    }
+                                    List<DefaultMutableTreeNode> linkNodes = getLinkNodes(pNode);
                                     result = linkNodes.indexOf(dmtn);
                                     if (-1 < result) {
                                         result = pNode.getChildCount() + result;
@@ -1709,13 +1741,12 @@ public class SMatchGUI extends Observable implements Observer, Executor {
                 TreePath sourcePath = createPathToRoot(sourceNode);
                 TreePath targetPath = createPathToRoot(targetNode);
 
-                if (sourceNode.nodeData().getUserObject() instanceof List
-                        && targetNode.nodeData().getUserObject() instanceof List) {
+                if (tSource.getModel() instanceof MappingTreeModel
+                        && tTarget.getModel() instanceof MappingTreeModel) {
 
-                    @SuppressWarnings("unchecked")
-                    List<DefaultMutableTreeNode> sourceLinkNodes = (List<DefaultMutableTreeNode>) sourceNode.nodeData().getUserObject();
-                    @SuppressWarnings("unchecked")
-                    List<DefaultMutableTreeNode> targetLinkNodes = (List<DefaultMutableTreeNode>) targetNode.nodeData().getUserObject();
+                    // the link nodes might have been dropped when a node above was collapsed
+                    List<DefaultMutableTreeNode> sourceLinkNodes = ((MappingTreeModel) tSource.getModel()).getLinkNodes(sourceNode);
+                    List<DefaultMutableTreeNode> targetLinkNodes = ((MappingTreeModel) tTarget.getModel()).getLinkNodes(targetNode);
                     DefaultMutableTreeNode sourceLinkNode;
                     DefaultMutableTreeNode targetLinkNode;
 
@@ -2148,6 +2179,23 @@ public class SMatchGUI extends Observable implements Observer, Executor {
         }
     };
 
+    private final TreeExpansionListener treeExpansionListener = new TreeExpansionListener() {
+        public void treeExpanded(TreeExpansionEvent event) {
+            // link nodes are created when the tree asks for the children
+        }
+
+        public void treeCollapsed(TreeExpansionEvent event) {
+            if (event.getSource() instanceof JTree) {
+                JTree tree = (JTree) event.getSource();
+                Object o = event.getPath().getLastPathComponent();
+                if (tree.getModel() instanceof MappingTreeModel && o instanceof IBaseNode) {
+                    MappingTreeModel mtm = (MappingTreeModel) tree.getModel();
+                    mtm.evict((IBaseNode) o);
+                }
+            }
+        }
+    };
+
     private final FocusListener treeFocusListener = new FocusListener() {
         public void focusGained(FocusEvent e) {
             if (!e.isTemporary()) {
@@ -2188,12 +2236,8 @@ public class SMatchGUI extends Observable implements Observer, Executor {
                     uncoalesceTree(tSource);
                     //find the link node
                     DefaultMutableTreeNode linkNode = null;
-                    @SuppressWarnings("unchecked")
-                    List<DefaultMutableTreeNode> linkNodes = (List<DefaultMutableTreeNode>) me.getSource().nodeData().getUserObject();
                     MappingTreeModel matm = (MappingTreeModel) tSource.getModel();
-                    if (null == linkNodes) {
-                        linkNodes = matm.updateUserObject(me.getSource());
-                    }
+                    List<DefaultMutableTreeNode> linkNodes = matm.getLinkNodes(me.getSource());
                     for (DefaultMutableTreeNode dmtn : linkNodes) {
                         if (me.equals(dmtn.getUserObject())) {
                             linkNode = dmtn;
@@ -2473,12 +2517,9 @@ public class SMatchGUI extends Observable implements Observer, Executor {
                         setText(ELLIPSIS);
                         setIcon(iconUncoalesceSmall);
                         StringBuilder tip = new StringBuilder();
-                        @SuppressWarnings("unchecked")
-                        List<DefaultMutableTreeNode> linkNodes = (List<DefaultMutableTreeNode>) c.parent.nodeData().getUserObject();
-                        if (null == linkNodes) {
-                            if (tree.getModel() instanceof MappingTreeModel) {
-                                linkNodes = ((MappingTreeModel) tree.getModel()).updateUserObject(c.parent);
-                            }
+                        List<DefaultMutableTreeNode> linkNodes = null;
+                        if (tree.getModel() instanceof MappingTreeModel) {
+                            linkNodes = ((MappingTreeModel) tree.getModel()).getLinkNodes(c.parent);
                         }
                         for (int i = c.range.x; i <= c.range.y; i++) {
                             if (i < c.parent.getChildCount()) {
@@ -3191,7 +3232,13 @@ public class SMatchGUI extends Observable implements Observer, Executor {
                 semMapping.acquire();
                 if (null != loadingTask) {
                     loadingTask.execute();
-                    return loadingTask.get();
+                    try {
+                        return loadingTask.get();
+                    } catch (InterruptedException e) {
+                        // stop loading too
+                        loadingTask.cancel(true);
+                        throw e;
+                    }
                 } else {
                     return (IContext) getMatchManager().loadContext(file.getAbsolutePath());
                 }
@@ -3746,24 +3793,33 @@ public class SMatchGUI extends Observable implements Observer, Executor {
 
     private void setupTaskProgressBarAndHandler(final AsyncTask asyncTask, final JProgressBar progressBar) {
         if (0 < asyncTask.getTotal()) {
-            progressBar.setIndeterminate(false);
-            progressBar.setMaximum(100);
-            progressBar.setMinimum(0);
-            progressBar.setValue(0);
-
-            // set up progress handler
-            asyncTask.addPropertyChangeListener(new PropertyChangeListener() {
-                private final long total = asyncTask.getTotal();
-
-                @Override
-                public void propertyChange(PropertyChangeEvent evt) {
-                    if ("progress".equals(evt.getPropertyName())) {
+            setupDeterminateProgressBar(progressBar);
+        }
+
+        // set up progress handler
+        // some tasks, like OWL loading, know the total only once they have started
+        asyncTask.addPropertyChangeListener(new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                if ("progress".equals(evt.getPropertyName())) {
+                    long total = asyncTask.getTotal();
+                    if (0 < total) {
+                        if (progressBar.isIndeterminate()) {
+                            setupDeterminateProgressBar(progressBar);
+                        }
                         Long progress = (Long) evt.getNewValue();
                         progressBar.setValue((int) (100 * (progress / (double) total)));
                     }
                 }
-            });
-        }
+            }
+        });
+    }
+
+    private static void setupDeterminateProgressBar(JProgressBar progressBar) {
+        progressBar.setIndeterminate(false);
+        progressBar.setMaximum(100);
+        progressBar.setMinimum(0);
+        progressBar.setValue(0);
     }
 
     private void handleUITaskCompletion(SwingWorker.StateValue oldState, SwingWorker.StateValue newState, JProgressBar pbContext) {
@@ -4217,6 +4273,10 @@ public class SMatchGUI extends Observable implements Observer, Executor {
      * @param mapping a mapping
      */
     private void createTree(final IContext context, final JTree jTree, final IContextMapping<INode> mapping) {
+        if (jTree.getModel() instanceof MappingTreeModel) {
+            ((MappingTreeModel) jTree.getModel()).evictAll();
+        }
+        jTree.removeTreeExpansionListener(treeExpansionListener);
         if (null == context) {
             jTree.setModel(new DefaultTreeModel(new DefaultMutableTreeNode(EMPTY_ROOT_NODE_LABEL)));
             jTree.removeTreeSelectionListener(treeSelectionListener);
@@ -4225,10 +4285,14 @@ public class SMatchGUI extends Observable implements Observer, Executor {
             jTree.setEditable(false);
         } else {
             TreeModel treeModel;
-            clearUserObjects(context.getRoot());
             treeModel = new MappingTreeModel(context.getRoot(), jTree == tSource, mapping);
             jTree.addFocusListener(treeFocusListener);
+            jTree.addTreeExpansionListener(treeExpansionListener);
 
+            // with fixed row height the tree keeps the state of the expanded nodes only,
+            // instead of measuring every child of every expanded node
+            jTree.setRowHeight(getRowHeight(jTree, context.getRoot()));
+            jTree.setLargeModel(true);
             jTree.setModel(treeModel);
 
             //expand all the nodes initially
@@ -4259,14 +4323,9 @@ public class SMatchGUI extends Observable implements Observer, Executor {
         }
     }
 
-    private void clearUserObjects(INode root) {
-        if (null != root) {
-            root.nodeData().setUserObject(null);
-            Iterator<INode> i = root.descendantsIterator();
-            while (i.hasNext()) {
-                i.next().nodeData().setUserObject(null);
-            }
-        }
+    private int getRowHeight(final JTree jTree, final INode root) {
+        Component c = mappingTreeCellRenderer.getTreeCellRendererComponent(jTree, root, false, false, false, 0, false);
+        return Math.max(SMALL_ICON_SIZE, c.getPreferredSize().height);
     }
 
     private void updateMatchManagerConfig(final String newConfig) {
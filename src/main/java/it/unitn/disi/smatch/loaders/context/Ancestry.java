@@ -0,0 +1,133 @@
+package it.unitn.disi.smatch.loaders.context;
+
+import java.util.Arrays;
+
+/**
+ * Rejects the links which would close a cycle in a forest of numbered nodes, without walking up the forest.
+ * <p/>
+ * While the forest grows, the nodes are kept in disjoint sets, one per tree. A node which has no parent yet is
+ * the root of its tree, therefore linking it under a node closes a cycle exactly when both are in the same tree.
+ * The sets are merged by size with path halving, so each check takes nearly constant time.
+ * <p/>
+ * Once the forest is complete, {@link #index(int[])} numbers the nodes in depth-first order. A node is an ancestor
+ * of another when the interval of its subtree contains the other, which answers whether a reference to a node
+ * may be placed under another one in constant time.
+ *
+ * @author agent
+ */
+class Ancestry {
+
+    public static final int NONE = -1;
+
+    // disjoint sets: the parent of each node in its set and the size of each set
+    private final int[] set;
+    private final int[] size;
+
+    // depth-first intervals of the subtrees
+    private int[] enter;
+    private int[] exit;
+
+    public Ancestry(int count) {
+        set = new int[count];
+        size = new int[count];
+        for (int i = 0; i < count; i++) {
+            set[i] = i;
+            size[i] = 1;
+        }
+    }
+
+    /**
+     * Registers the link of a node without a parent under another node.
+     *
+     * @param parent parent node
+     * @param child  node without a parent
+     * @return false if the link would close a cycle, true otherwise
+     */
+    public boolean link(int parent, int child) {
+        int a = find(parent);
+        int b = find(child);
+        if (a == b) {
+            return false;
+        }
+        if (size[a] < size[b]) {
+            int t = a;
+            a = b;
+            b = t;
+        }
+        set[b] = a;
+        size[a] += size[b];
+        return true;
+    }
+
+    private int find(int node) {
+        while (set[node] != node) {
+            set[node] = set[set[node]];
+            node = set[node];
+        }
+        return node;
+    }
+
+    /**
+     * Numbers the nodes of the complete forest in depth-first order.
+     *
+     * @param parent parent of each node, {@link #NONE} for the roots
+     */
+    public void index(int[] parent) {
+        int count = parent.length;
+        // children of each node as ranges of one array
+        int[] first = new int[count + 1];
+        for (int p : parent) {
+            if (NONE != p) {
+                first[p + 1]++;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            first[i + 1] += first[i];
+        }
+        int[] children = new int[first[count]];
+        int[] next = Arrays.copyOf(first, count);
+        for (int i = 0; i < count; i++) {
+            if (NONE != parent[i]) {
+                children[next[parent[i]]++] = i;
+            }
+        }
+
+        // next child to visit
+        next = Arrays.copyOf(first, count);
+        enter = new int[count];
+        exit = new int[count];
+        int[] stack = new int[count];
+        int clock = 0;
+        for (int root = 0; root < count; root++) {
+            if (NONE != parent[root]) {
+                continue;
+            }
+            int top = 0;
+            stack[top++] = root;
+            enter[root] = clock++;
+            while (0 < top) {
+                int node = stack[top - 1];
+                if (next[node] < first[node + 1]) {
+                    int child = children[next[node]++];
+                    enter[child] = clock++;
+                    stack[top++] = child;
+                } else {
+                    exit[node] = clock++;
+                    top--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether the first node is the second one or one of its ancestors.
+     * Valid after {@link #index(int[])} only.
+     *
+     * @param ancestor possible ancestor
+     * @param node     node
+     * @return whether the first node is the second one or one of its ancestors
+     */
+    public boolean isAncestor(int ancestor, int node) {
+        return enter[ancestor] <= enter[node] && exit[node] <= exit[ancestor];
+    }
+}
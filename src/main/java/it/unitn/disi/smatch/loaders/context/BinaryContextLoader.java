@@ -0,0 +1,244 @@
+package it.unitn.disi.smatch.loaders.context;
+
+import it.unitn.disi.smatch.data.ling.IAtomicConceptOfLabel;
+import it.unitn.disi.smatch.data.trees.Context;
+import it.unitn.disi.smatch.data.trees.IContext;
+import it.unitn.disi.smatch.data.trees.INode;
+import it.unitn.disi.smatch.data.trees.INodeData;
+import it.unitn.disi.smatch.loaders.ILoader;
+import it.unitn.disi.smatch.oracles.ILinguisticOracle;
+import it.unitn.disi.smatch.oracles.LinguisticOracleException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Loads a context from the compact binary format written by
+ * {@link it.unitn.disi.smatch.renderers.context.BinaryContextRenderer}.
+ * <p/>
+ * The file is mapped read-only into memory. The tree structure and the node data are stored as parallel int arrays
+ * indexing a string table, with nodes in preorder, so the tree is rebuilt in a single pass without parsing.
+ * Strings are decoded from the table on first use and shared among all nodes and concepts referring to them.
+ * <p/>
+ * The linguistic oracle is needed to restore the senses of the concepts of preprocessed contexts.
+ * Without it the senses are skipped.
+ * <p/>
+ * File layout, all values are big-endian ints:
+ * <pre>
+ * MAGIC VERSION nodeCount conceptCount senseCount stringCount blobLength
+ * parent[nodeCount] id[nodeCount] name[nodeCount] labelFormula[nodeCount] nodeFormula[nodeCount]
+ * provenance[nodeCount] flags[nodeCount] conceptStart[nodeCount + 1]
+ * conceptId[conceptCount] token[conceptCount] lemma[conceptCount] senseStart[conceptCount + 1]
+ * sense[senseCount]
+ * stringStart[stringCount + 1] blob[blobLength bytes of UTF-8]
+ * </pre>
+ * String references are indexes in the string table, {@link #NULL_STRING} stands for null.
+ *
+ * @author agent
+ */
+public class BinaryContextLoader extends BaseContextLoader<IContext, INode> implements IContextLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(BinaryContextLoader.class);
+
+    public static final String BINARY_FILES = "Binary context files (*.smc)";
+
+    public static final int MAGIC = 0x534D4358;
+    public static final int VERSION = 1;
+    public static final int NULL_STRING = -1;
+    public static final int FLAG_PREPROCESSED = 1;
+
+    // MAGIC VERSION nodeCount conceptCount senseCount stringCount blobLength
+    private static final int HEADER_INTS = 7;
+
+    private final ILinguisticOracle linguisticOracle;
+
+    public BinaryContextLoader() {
+        this.linguisticOracle = null;
+    }
+
+    public BinaryContextLoader(ILinguisticOracle linguisticOracle) {
+        this.linguisticOracle = linguisticOracle;
+    }
+
+    /**
+     * Decodes strings from the mapped string table on demand.
+     */
+    private static class StringTable {
+
+        private final IntBuffer starts;
+        private final ByteBuffer blob;
+        private final String[] strings;
+
+        StringTable(IntBuffer starts, ByteBuffer blob, int count) {
+            this.starts = starts;
+            this.blob = blob;
+            this.strings = new String[count];
+        }
+
+        String get(int index) {
+            if (NULL_STRING == index) {
+                return null;
+            }
+            String result = strings[index];
+            if (null == result) {
+                int start = starts.get(index);
+                int length = starts.get(index + 1) - start;
+                byte[] bytes = new byte[length];
+                ByteBuffer view = blob.duplicate();
+                view.position(start);
+                view.get(bytes);
+                result = new String(bytes, StandardCharsets.UTF_8);
+                strings[index] = result;
+            }
+            return result;
+        }
+    }
+
+    public IContext loadContext(String fileName) throws ContextLoaderException {
+        IContext result = new Context();
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "r");
+             FileChannel channel = file.getChannel()) {
+            if (Integer.MAX_VALUE < channel.size()) {
+                throw new ContextLoaderException("File is too large to be mapped: " + fileName);
+            }
+            if (channel.size() < 4 * HEADER_INTS) {
+                throw new ContextLoaderException("Truncated binary context file: " + fileName);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (MAGIC != buffer.getInt()) {
+                throw new ContextLoaderException("Not a binary context file: " + fileName);
+            }
+            int version = buffer.getInt();
+            if (VERSION != version) {
+                throw new ContextLoaderException("Unsupported binary context version " + version + ": " + fileName);
+            }
+            int nodeCount = buffer.getInt();
+            int conceptCount = buffer.getInt();
+            int senseCount = buffer.getInt();
+            int stringCount = buffer.getInt();
+            int blobLength = buffer.getInt();
+            checkLength(fileName, channel.size(), nodeCount, conceptCount, senseCount, stringCount, blobLength);
+
+            IntBuffer parent = slice(buffer, nodeCount);
+            IntBuffer id = slice(buffer, nodeCount);
+            IntBuffer name = slice(buffer, nodeCount);
+            IntBuffer labelFormula = slice(buffer, nodeCount);
+            IntBuffer nodeFormula = slice(buffer, nodeCount);
+            IntBuffer provenance = slice(buffer, nodeCount);
+            IntBuffer flags = slice(buffer, nodeCount);
+            IntBuffer conceptStart = slice(buffer, nodeCount + 1);
+            IntBuffer conceptId = slice(buffer, conceptCount);
+            IntBuffer token = slice(buffer, conceptCount);
+            IntBuffer lemma = slice(buffer, conceptCount);
+            IntBuffer senseStart = slice(buffer, conceptCount + 1);
+            IntBuffer sense = slice(buffer, senseCount);
+            IntBuffer stringStart = slice(buffer, stringCount + 1);
+            ByteBuffer blob = buffer.slice();
+            blob.limit(blobLength);
+
+            StringTable strings = new StringTable(stringStart, blob, stringCount);
+
+            if (log.isInfoEnabled()) {
+                log.info("Loading nodes: " + nodeCount + ", concepts: " + conceptCount);
+            }
+
+            boolean sensesSkipped = false;
+            INode[] nodes = new INode[nodeCount];
+            for (int i = 0; i < nodeCount; i++) {
+                int parentIndex = parent.get(i);
+                INode node;
+                if (-1 == parentIndex) {
+                    if (0 != i) {
+                        throw new ContextLoaderException("Corrupt binary context file, several roots: " + fileName);
+                    }
+                    node = result.createRoot(strings.get(name.get(i)));
+                } else {
+                    if (parentIndex < 0 || i <= parentIndex) {
+                        throw new ContextLoaderException("Corrupt binary context file, node " + i + " has parent " + parentIndex + ": " + fileName);
+                    }
+                    node = result.createNode(strings.get(name.get(i)));
+                    nodes[parentIndex].addChild(node);
+                }
+                nodes[i] = node;
+
+                INodeData nd = node.nodeData();
+                nd.setId(strings.get(id.get(i)));
+                nd.setLabelFormula(strings.get(labelFormula.get(i)));
+                nd.setNodeFormula(strings.get(nodeFormula.get(i)));
+                nd.setProvenance(strings.get(provenance.get(i)));
+                nd.setIsPreprocessed(0 != (flags.get(i) & FLAG_PREPROCESSED));
+
+                for (int c = conceptStart.get(i); c < conceptStart.get(i + 1); c++) {
+                    IAtomicConceptOfLabel acol = nd.createConcept();
+                    acol.setId(conceptId.get(c));
+                    acol.setToken(strings.get(token.get(c)));
+                    acol.setLemma(strings.get(lemma.get(c)));
+                    if (null != linguisticOracle) {
+                        for (int s = senseStart.get(c); s < senseStart.get(c + 1); s++) {
+                            acol.addSense(linguisticOracle.createSense(strings.get(sense.get(s))));
+                        }
+                    } else {
+                        sensesSkipped = sensesSkipped || senseStart.get(c) < senseStart.get(c + 1);
+                    }
+                    nd.addConcept(acol);
+                }
+            }
+
+            if (sensesSkipped) {
+                log.warn("Senses are skipped, because the loader is configured without linguistic oracle.");
+            }
+
+            if (0 == nodeCount) {
+                throw new ContextLoaderException("Empty context: " + fileName);
+            }
+        } catch (IOException | LinguisticOracleException e) {
+            throw new ContextLoaderException(e.getClass().getSimpleName() + ": " + e.getMessage(), e);
+        } catch (IndexOutOfBoundsException | BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+            // string and concept references out of range
+            throw new ContextLoaderException("Corrupt binary context file " + fileName + ": " + e.getClass().getSimpleName() + ": " + e.getMessage(), e);
+        }
+
+        return result;
+    }
+
+    /**
+     * Checks that the counts in the header are consistent with the file length, so that a truncated or corrupt file
+     * is reported before anything is read.
+     */
+    private static void checkLength(String fileName, long length, int nodeCount, int conceptCount, int senseCount,
+                                    int stringCount, int blobLength) throws ContextLoaderException {
+        if (nodeCount < 0 || conceptCount < 0 || senseCount < 0 || stringCount < 0 || blobLength < 0) {
+            throw new ContextLoaderException("Corrupt binary context file, negative counts: " + fileName);
+        }
+        long ints = 8L * nodeCount + 1 + 4L * conceptCount + 1 + senseCount + stringCount + 1;
+        long expected = 4L * HEADER_INTS + 4L * ints + blobLength;
+        if (expected != length) {
+            throw new ContextLoaderException("Truncated or corrupt binary context file, expected " + expected
+                    + " bytes, found " + length + ": " + fileName);
+        }
+    }
+
+    private static IntBuffer slice(ByteBuffer buffer, int count) {
+        ByteBuffer view = buffer.slice();
+        view.limit(4 * count);
+        buffer.position(buffer.position() + 4 * count);
+        return view.asIntBuffer();
+    }
+
+    public String getDescription() {
+        return BINARY_FILES;
+    }
+
+    public ILoader.LoaderType getType() {
+        return ILoader.LoaderType.FILE;
+    }
+}
@@ -0,0 +1,304 @@
+package it.unitn.disi.smatch.loaders.context;
+
+import it.unitn.disi.smatch.data.trees.IContext;
+import it.unitn.disi.smatch.data.trees.INode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collects the concepts of a thesaurus and the broader-narrower edges between them and builds a tree out of them.
+ * <p/>
+ * Concepts are numbered in the order they are met and the edges are kept as pairs of numbers. An edge or a label may
+ * refer to a concept which is declared later, edges to concepts which are never declared are dropped. The tree is built
+ * in one pass over the edges: the first edge of a concept chooses its parent, unless it closes a cycle,
+ * and the concepts left with no parent are the roots. With several roots an artificial root "Top" is created.
+ * <p/>
+ * With multiple parents the other edges of a concept give {@link ReferenceNodes reference nodes}, otherwise they
+ * are dropped.
+ *
+ * @author agent
+ */
+class ConceptHierarchy {
+
+    private static final Logger log = LoggerFactory.getLogger(ConceptHierarchy.class);
+
+    private static final int NONE = Ancestry.NONE;
+
+    // IRI - concept number
+    private final Map<String, Integer> index = new HashMap<>();
+    private final List<String> iris = new ArrayList<>();
+    // null for the concepts without a label so far
+    private final List<String> labels = new ArrayList<>();
+    // concepts met only in the edges and the labels so far are not declared
+    private final BitSet declared = new BitSet();
+
+    // edges as child-parent pairs
+    private int[] edges = new int[1024];
+    private int edgeCount;
+
+    // parent of each concept, null until the edges are linked
+    private int[] parent;
+    // other parents as child-parent pairs, if linked with multiple parents
+    private int[] others;
+    private int otherCount;
+    private boolean linkedOthers;
+
+    /**
+     * Declares a concept. A concept declared again keeps its first label.
+     *
+     * @param iri   IRI of the concept
+     * @param label label of the concept
+     */
+    public void addConcept(String iri, String label) {
+        int concept = addConcept(iri);
+        if (null == labels.get(concept)) {
+            labels.set(concept, label);
+        }
+    }
+
+    /**
+     * Declares a concept.
+     *
+     * @param iri IRI of the concept
+     * @return number of the concept
+     */
+    public int addConcept(String iri) {
+        int concept = getConcept(iri);
+        if (!declared.get(concept)) {
+            declared.set(concept);
+            parent = null;
+        }
+        return concept;
+    }
+
+    /**
+     * Sets the label of a concept, replacing the previous one.
+     *
+     * @param concept number of the concept
+     * @param label   label of the concept
+     */
+    public void setLabel(int concept, String label) {
+        labels.set(concept, label);
+    }
+
+    /**
+     * Adds an edge from a concept to its broader concept.
+     *
+     * @param childIRI  IRI of the narrower concept
+     * @param parentIRI IRI of the broader concept
+     */
+    public void addBroader(String childIRI, String parentIRI) {
+        if (edgeCount == edges.length) {
+            edges = Arrays.copyOf(edges, 2 * edges.length);
+        }
+        edges[edgeCount++] = getConcept(childIRI);
+        edges[edgeCount++] = getConcept(parentIRI);
+        parent = null;
+    }
+
+    public int getConceptCount() {
+        return iris.size();
+    }
+
+    public int getEdgeCount() {
+        return edgeCount / 2;
+    }
+
+    /**
+     * Returns the number of a concept, numbering it if it is met for the first time.
+     *
+     * @param iri IRI of the concept
+     * @return number of the concept
+     */
+    public int getConcept(String iri) {
+        Integer result = index.get(iri);
+        if (null == result) {
+            result = iris.size();
+            index.put(iri, result);
+            iris.add(iri);
+            labels.add(null);
+            parent = null;
+        }
+        return result;
+    }
+
+    /**
+     * Builds the tree of the declared concepts in the context.
+     *
+     * @param context         context to build the tree in
+     * @param multipleParents whether to refer to the concepts from their other parents
+     * @throws ContextLoaderException if there are no concepts
+     */
+    public void build(IContext context, boolean multipleParents) throws ContextLoaderException {
+        build(context, multipleParents, labels);
+    }
+
+    /**
+     * Builds the tree of the declared concepts in the context, with the given labels. The parents are chosen
+     * once and reused by the following builds, until the concepts or the edges change.
+     *
+     * @param context         context to build the tree in
+     * @param multipleParents whether to refer to the concepts from their other parents
+     * @param labels          label of each concept, null for the unlabeled ones
+     * @throws ContextLoaderException if there are no concepts
+     */
+    public void build(IContext context, boolean multipleParents, List<String> labels) throws ContextLoaderException {
+        link(multipleParents);
+        int count = iris.size();
+
+        INode[] nodes = new INode[count];
+        int roots = 0;
+        int unlabeled = 0;
+        for (int i = 0; i < count; i++) {
+            if (declared.get(i)) {
+                String label = i < labels.size() ? labels.get(i) : null;
+                if (null == label) {
+                    unlabeled++;
+                    label = "";
+                }
+                nodes[i] = context.createNode(label);
+                nodes[i].nodeData().setProvenance(iris.get(i));
+                if (NONE == parent[i]) {
+                    roots++;
+                }
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            if (NONE != parent[i]) {
+                nodes[parent[i]].addChild(nodes[i]);
+            }
+        }
+
+        if (0 < unlabeled) {
+            if (log.isInfoEnabled()) {
+                log.info("Created unlabeled nodes: " + unlabeled);
+            }
+        }
+
+        if (multipleParents) {
+            for (int i = 0; i < otherCount; i += 2) {
+                ReferenceNodes.createReference(context, nodes[others[i + 1]], nodes[others[i]]);
+            }
+            if (log.isInfoEnabled()) {
+                log.info("Reference nodes created: " + otherCount / 2);
+            }
+        }
+
+        if (log.isInfoEnabled()) {
+            log.info("Found root nodes: " + roots);
+        }
+        if (0 == roots) {
+            throw new ContextLoaderException("Cannot find even one root.");
+        }
+        if (1 == roots) {
+            for (int i = 0; i < count; i++) {
+                if (null != nodes[i] && NONE == parent[i]) {
+                    context.setRoot(nodes[i]);
+                }
+            }
+        } else {
+            if (log.isWarnEnabled()) {
+                log.warn("Found multiple roots. Creating artificial root: Top");
+            }
+            INode root = context.createRoot("Top");
+            for (int i = 0; i < count; i++) {
+                if (null != nodes[i] && NONE == parent[i]) {
+                    root.addChild(nodes[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Chooses the parent of each concept and, with multiple parents, the other parents to refer from.
+     */
+    private void link(boolean multipleParents) {
+        if (null != parent && (linkedOthers || !multipleParents)) {
+            return;
+        }
+        int count = iris.size();
+        parent = new int[count];
+        Arrays.fill(parent, NONE);
+        Ancestry ancestry = new Ancestry(count);
+        // other parents as child-parent pairs
+        others = new int[multipleParents ? edgeCount : 0];
+        otherCount = 0;
+        linkedOthers = multipleParents;
+        int undeclared = 0;
+        int cycles = 0;
+        int dropped = 0;
+        for (int i = 0; i < edgeCount; i += 2) {
+            int child = edges[i];
+            int p = edges[i + 1];
+            if (!declared.get(child) || !declared.get(p)) {
+                undeclared++;
+            } else if (NONE == parent[child]) {
+                if (!ancestry.link(p, child)) {
+                    cycles++;
+                    if (log.isWarnEnabled()) {
+                        log.warn("Cycle found: " + iris.get(p) + " -> " + iris.get(child));
+                    }
+                } else {
+                    parent[child] = p;
+                }
+            } else if (parent[child] != p) {
+                // there can be multiple BTs
+                if (multipleParents) {
+                    others[otherCount++] = child;
+                    others[otherCount++] = p;
+                } else {
+                    dropped++;
+                    if (log.isDebugEnabled()) {
+                        log.debug("Multiple BTs are found for the concept: " + iris.get(child));
+                    }
+                }
+            }
+        }
+
+        if (log.isInfoEnabled()) {
+            log.info("Concepts: " + count + ", edges: " + edgeCount / 2);
+            if (0 < undeclared) {
+                log.info("Edges to undeclared concepts dropped: " + undeclared);
+            }
+            if (0 < cycles) {
+                log.info("Edges closing cycles dropped: " + cycles);
+            }
+            if (0 < dropped) {
+                log.info("Edges to other parents dropped: " + dropped);
+            }
+        }
+
+        if (multipleParents) {
+            ancestry.index(parent);
+            // keep the other parents which can refer to the concept
+            int kept = 0;
+            // an edge might be stated both as BT and as NT
+            Set<Long> seen = new HashSet<>();
+            for (int i = 0; i < otherCount; i += 2) {
+                int child = others[i];
+                int p = others[i + 1];
+                if (!seen.add(((long) child << 32) | p)) {
+                    continue;
+                }
+                if (ancestry.isAncestor(child, p)) {
+                    if (log.isWarnEnabled()) {
+                        log.warn("Cycle found: " + iris.get(p) + " -> " + iris.get(child));
+                    }
+                } else {
+                    others[kept++] = child;
+                    others[kept++] = p;
+                }
+            }
+            otherCount = kept;
+        }
+    }
+}
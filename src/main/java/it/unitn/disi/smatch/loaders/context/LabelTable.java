@@ -0,0 +1,96 @@
+package it.unitn.disi.smatch.loaders.context;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Keeps the labels of the concepts of a thesaurus in all languages as parallel arrays of entries.
+ * <p/>
+ * The label of a concept in a language is its first preferred label in this language, otherwise its first
+ * alternative label in this language. For the empty language the first preferred label in any language is taken,
+ * otherwise the first alternative one, as in {@link SKOSContextLoader}.
+ *
+ * @author agent
+ */
+class LabelTable {
+
+    // language - number, "" for the labels without language
+    private final Map<String, Integer> languages = new HashMap<>();
+
+    // entries: concept, language number with the lowest bit set for the preferred labels, label
+    private int[] concepts = new int[1024];
+    private int[] kinds = new int[1024];
+    private String[] labels = new String[1024];
+    private int count;
+
+    /**
+     * Adds a label of a concept.
+     *
+     * @param concept   number of the concept
+     * @param language  language of the label, null or empty if it has none
+     * @param preferred whether it is a preferred label or an alternative one
+     * @param label     label
+     */
+    public void add(int concept, String language, boolean preferred, String label) {
+        if (null == language) {
+            language = "";
+        }
+        Integer number = languages.get(language);
+        if (null == number) {
+            number = languages.size();
+            languages.put(language, number);
+        }
+        if (count == concepts.length) {
+            concepts = Arrays.copyOf(concepts, 2 * count);
+            kinds = Arrays.copyOf(kinds, 2 * count);
+            labels = Arrays.copyOf(labels, 2 * count);
+        }
+        concepts[count] = concept;
+        kinds[count] = (number << 1) | (preferred ? 1 : 0);
+        labels[count] = label;
+        count++;
+    }
+
+    /**
+     * Returns the languages of the labels, with "" for the labels without language.
+     *
+     * @return languages of the labels
+     */
+    public Set<String> getLanguages() {
+        return Collections.unmodifiableSet(new TreeSet<>(languages.keySet()));
+    }
+
+    /**
+     * Returns the label of each concept in the language.
+     *
+     * @param language     language, "" for any
+     * @param conceptCount number of concepts
+     * @return label of each concept, null for the concepts without a label in the language
+     */
+    public List<String> getLabels(String language, int conceptCount) {
+        String[] result = new String[conceptCount];
+        boolean any = null == language || language.isEmpty();
+        Integer number = any ? Integer.valueOf(-1) : languages.get(language);
+        if (null != number) {
+            int wanted = number;
+            // 0 - no label, 1 - alternative label, 2 - preferred label
+            byte[] ranks = new byte[conceptCount];
+            for (int i = 0; i < count; i++) {
+                if (any || wanted == kinds[i] >>> 1) {
+                    byte rank = (byte) (1 + (kinds[i] & 1));
+                    int concept = concepts[i];
+                    if (ranks[concept] < rank) {
+                        ranks[concept] = rank;
+                        result[concept] = labels[i];
+                    }
+                }
+            }
+        }
+        return Arrays.asList(result);
+    }
+}
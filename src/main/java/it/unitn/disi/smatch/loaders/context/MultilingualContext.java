@@ -0,0 +1,55 @@
+package it.unitn.disi.smatch.loaders.context;
+
+import it.unitn.disi.smatch.data.trees.Context;
+import it.unitn.disi.smatch.data.trees.IContext;
+import it.unitn.disi.smatch.data.trees.INode;
+
+import java.util.Set;
+
+/**
+ * A thesaurus loaded once with its labels in all languages, which gives a context in each language without
+ * loading the thesaurus again.
+ * <p/>
+ * The hierarchy is computed once and shared by the contexts. Each context is a separate tree with its own nodes,
+ * so that it can be preprocessed and matched independently of the others.
+ *
+ * @author agent
+ */
+public class MultilingualContext {
+
+    private final BaseContextLoader<IContext, INode> loader;
+    private final ConceptHierarchy hierarchy;
+    private final LabelTable labels;
+    private final boolean multipleParents;
+
+    MultilingualContext(BaseContextLoader<IContext, INode> loader, ConceptHierarchy hierarchy, LabelTable labels, boolean multipleParents) {
+        this.loader = loader;
+        this.hierarchy = hierarchy;
+        this.labels = labels;
+        this.multipleParents = multipleParents;
+    }
+
+    /**
+     * Returns the languages of the labels, with "" for the labels without language.
+     *
+     * @return languages of the labels
+     */
+    public Set<String> getLanguages() {
+        return labels.getLanguages();
+    }
+
+    /**
+     * Creates the context with the labels in the language. A concept is labeled with its preferred label in
+     * the language, otherwise with its alternative label in the language, otherwise it is left unlabeled.
+     *
+     * @param language language of the labels, "" for any language
+     * @return context with the labels in the language
+     * @throws ContextLoaderException ContextLoaderException
+     */
+    public synchronized IContext getContext(String language) throws ContextLoaderException {
+        IContext result = new Context();
+        hierarchy.build(result, multipleParents, labels.getLabels(language, hierarchy.getConceptCount()));
+        loader.createIds(result);
+        return result;
+    }
+}
@@ -1,5 +1,6 @@
 package it.unitn.disi.smatch.loaders.context;
 
+import it.unitn.disi.smatch.async.AsyncTask;
 import it.unitn.disi.smatch.data.trees.Context;
 import it.unitn.disi.smatch.data.trees.IContext;
 import it.unitn.disi.smatch.data.trees.INode;
@@ -9,12 +10,22 @@ import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.model.*;
 import org.semanticweb.owlapi.reasoner.OWLReasoner;
 import org.semanticweb.owlapi.reasoner.OWLReasonerFactory;
+import org.semanticweb.owlapi.reasoner.structural.StructuralReasonerFactory;
 import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Loads a context from an ontology OWL API and HermiT reasoner.
@@ -24,10 +35,33 @@ import java.util.Set;
  * <p/>
  * The loader uses class hierarchy from the ontology in question and loads it into a tree.
  * Currently, the loader follows subclass hierarchy.
+ * <p/>
+ * Takes in a snapshot parameter, which specifies whether to query the reasoner once for the direct subclasses of
+ * each class and for all unsatisfiable classes, keeping the inferred taxonomy in memory, instead of querying it
+ * while building the tree. Default false. With the snapshot the tree is built from memory and the parallelism
+ * parameter specifies the number of threads building the branches, 0 for all available processors. Default 1.
+ * <p/>
+ * Takes in a structural parameter, which specifies whether to use the asserted subclass hierarchy through
+ * the OWL API structural reasoner instead of classifying the ontology with HermiT. Default false. Only the classes
+ * subclassing Nothing are unsatisfiable then. The time taken by loading, reasoning and building the tree is logged.
+ * <p/>
+ * Takes in a preferredLanguage parameter, which defines the language of rdfs:label preferred for class names.
+ * If there is no label in this language, a label without language is used, then a label in any language,
+ * then the IRI fragment. The labels are collected into an index in one pass over the ontology.
+ * <p/>
+ * Takes in a multipleParents parameter, which specifies how to load a class with several direct superclasses.
+ * By default its subtree is duplicated under each superclass. Otherwise the subtree is loaded once,
+ * under the superclass met first, and under the other superclasses {@link ReferenceNodes reference nodes} are
+ * placed, which share the subtree once the context is classified.
+ * <p/>
+ * An asynchronous load reports the progress per created node and publishes the nodes as they are created.
+ * With the snapshot the total is known after the ontology is loaded: it is the number of nodes, counted in the
+ * snapshot. Without it the progress is indeterminate, because counting the nodes would query the reasoner for
+ * every class a second time. Cancellation is checked between the loading stages and for each class.
  *
  * @author <a rel="author" href="http://autayeu.com/">Aliaksandr Autayeu</a>
  */
-public class OWLContextLoader extends BaseContextLoader<IContext, INode> implements IContextLoader {
+public class OWLContextLoader extends BaseContextLoader<IContext, INode> implements IContextLoader, IAsyncContextLoader {
 
     private static final Logger log = LoggerFactory.getLogger(OWLContextLoader.class);
 
@@ -40,96 +74,253 @@ public class OWLContextLoader extends BaseContextLoader<IContext, INode> impleme
     // whether to replace _
     private final boolean replaceUnderscore;
 
+    // whether to take a snapshot of the inferred taxonomy before building the tree
+    private final boolean snapshot;
+
+    // number of threads building the tree from the snapshot, 0 for all available processors
+    private final int parallelism;
+
+    // whether to use the asserted hierarchy instead of HermiT
+    private final boolean structural;
+
+    // which language to prefer for labels, default "" - prefer labels without language
+    private final String preferredLanguage;
+
+    // whether to refer to a class under its other superclasses instead of duplicating its subtree
+    private final boolean multipleParents;
+
+    // location to load by an asynchronous load, null otherwise
+    private final String location;
+
+    // number of created nodes, counted without a lock, because the branches might be built on several threads
+    private final AtomicLong created = new AtomicLong();
+
     private static final OWLClass NOTHING_CLASS = OWLManager.getOWLDataFactory().getOWLClass(OWLRDFVocabulary.OWL_NOTHING.getIRI());
 
     public OWLContextLoader() {
         topClass = null;
         excludeNothing = true;
         replaceUnderscore = true;
+        snapshot = false;
+        parallelism = 1;
+        structural = false;
+        preferredLanguage = "";
+        multipleParents = false;
+        location = null;
     }
 
     public OWLContextLoader(String topClass, boolean excludeNothing, boolean replaceUnderscore) {
+        this(topClass, excludeNothing, replaceUnderscore, false, 1);
+    }
+
+    public OWLContextLoader(String topClass, boolean excludeNothing, boolean replaceUnderscore, boolean snapshot, int parallelism) {
+        this(topClass, excludeNothing, replaceUnderscore, snapshot, parallelism, false);
+    }
+
+    public OWLContextLoader(String topClass, boolean excludeNothing, boolean replaceUnderscore, boolean snapshot, int parallelism,
+                            boolean structural) {
+        this(topClass, excludeNothing, replaceUnderscore, snapshot, parallelism, structural, "");
+    }
+
+    public OWLContextLoader(String topClass, boolean excludeNothing, boolean replaceUnderscore, boolean snapshot, int parallelism,
+                            boolean structural, String preferredLanguage) {
+        this(topClass, excludeNothing, replaceUnderscore, snapshot, parallelism, structural, preferredLanguage, false);
+    }
+
+    public OWLContextLoader(String topClass, boolean excludeNothing, boolean replaceUnderscore, boolean snapshot, int parallelism,
+                            boolean structural, String preferredLanguage, boolean multipleParents) {
         this.topClass = topClass;
         this.excludeNothing = excludeNothing;
         this.replaceUnderscore = replaceUnderscore;
+        this.snapshot = snapshot;
+        this.parallelism = parallelism;
+        this.structural = structural;
+        this.preferredLanguage = preferredLanguage;
+        this.multipleParents = multipleParents;
+        this.location = null;
     }
 
-    /**
-     * <p>Simple visitor that grabs any labels on an entity.</p>
-     * <p/>
-     * Author: Sean Bechhofer<br>
-     * The University Of Manchester<br>
-     * Information Management Group<br>
-     * Date: 17-03-2007<br>
-     * <br>
-     */
-    private class LabelExtractor implements OWLAnnotationObjectVisitor {
+    private OWLContextLoader(OWLContextLoader loader, String location) {
+        this.topClass = loader.topClass;
+        this.excludeNothing = loader.excludeNothing;
+        this.replaceUnderscore = loader.replaceUnderscore;
+        this.snapshot = loader.snapshot;
+        this.parallelism = loader.parallelism;
+        this.structural = loader.structural;
+        this.preferredLanguage = loader.preferredLanguage;
+        this.multipleParents = loader.multipleParents;
+        this.location = location;
+    }
 
-        String result;
+    @Override
+    public AsyncTask<IContext, INode> asyncLoad(String location) {
+        return new OWLContextLoader(this, location);
+    }
 
-        public LabelExtractor() {
-            result = null;
-        }
+    @Override
+    protected IContext doInBackground() throws Exception {
+        return loadContext(location);
+    }
 
-        public void visit(OWLAnonymousIndividual individual) {
+    /**
+     * Advances the progress and publishes the node, if the load is asynchronous.
+     *
+     * @param node created node
+     */
+    private void nodeCreated(INode node) {
+        long count = created.incrementAndGet();
+        firePropertyChange("progress", count - 1, count);
+        if (null != location) {
+            publish(node);
         }
+    }
 
-        public void visit(IRI iri) {
+    /**
+     * Inferred taxonomy below the top class.
+     */
+    private static class Taxonomy {
+        // satisfiable class - its direct subclasses
+        private final Map<OWLClass, Set<OWLClass>> subClasses = new HashMap<>();
+        private final Set<OWLClass> unsatisfiable;
+        // class - its superclass met first, which gets the subtree of the class
+        private final Map<OWLClass, OWLClass> firstParents = new HashMap<>();
+
+        private Taxonomy(Set<OWLClass> unsatisfiable) {
+            this.unsatisfiable = unsatisfiable;
         }
+    }
 
-        public void visit(OWLLiteral literal) {
-        }
+    public void buildHierarchy(OWLReasoner reasoner, OWLOntology o, IContext c, INode root, OWLClass clazz) throws OWLException {
+        buildHierarchy(reasoner, indexLabels(o), c, root, clazz, new HashMap<OWLClass, INode>());
+    }
 
-        public void visit(OWLAnnotation annotation) {
-            /*
-            * If it's a label, grab it as the result. Note that if there are
-            * multiple labels, the last one will be used.
-            */
-            if (annotation.getProperty().isLabel()) {
-                OWLLiteral c = (OWLLiteral) annotation.getValue();
-                result = c.getLiteral();
+    /**
+     * Builds the hierarchy querying the reasoner.
+     *
+     * @param classNodes class - its node, for referring to the class under its other superclasses
+     */
+    private void buildHierarchy(OWLReasoner reasoner, Map<IRI, String> labels, IContext c, INode root, OWLClass clazz,
+                                Map<OWLClass, INode> classNodes) {
+        if (!isCancelled() && reasoner.isSatisfiable(clazz)) {
+            if (!multipleParents && 1 < reasoner.getSuperClasses(clazz, true).getFlattened().size()) {
+                if (log.isWarnEnabled()) {
+                    log.warn("Multiple superclasses:\t" + clazz.toStringID());
+                }
+            }
+            for (OWLClass childClass : reasoner.getSubClasses(clazz, true).getFlattened()) {
+                if (!excludeNothing || !NOTHING_CLASS.equals(childClass)) {
+                    if (multipleParents && !childClass.equals(clazz) && classNodes.containsKey(childClass)) {
+                        nodeCreated(ReferenceNodes.createReference(c, root, classNodes.get(childClass)));
+                    } else if (!childClass.equals(clazz)) {
+                        INode childNode = c.createNode(labelFor(labels, childClass));
+                        childNode.nodeData().setProvenance(childClass.getIRI().toString());
+                        root.addChild(childNode);
+                        nodeCreated(childNode);
+                        if (multipleParents) {
+                            classNodes.put(childClass, childNode);
+                        }
+                        buildHierarchy(reasoner, labels, c, childNode, childClass, classNodes);
+                    } else {
+                        if (log.isWarnEnabled()) {
+                            log.warn("Subclass equal to class:\t" + clazz.toStringID());
+                        }
+                    }
+                }
             }
-
-        }
-
-        public void visit(OWLAnnotationAssertionAxiom axiom) {
-        }
-
-        public void visit(OWLAnnotationPropertyDomainAxiom axiom) {
         }
+    }
 
-        public void visit(OWLAnnotationPropertyRangeAxiom axiom) {
+    /**
+     * Queries the reasoner for the direct subclasses of each satisfiable class below the top class once
+     * and for the unsatisfiable classes.
+     */
+    private Taxonomy snapshot(OWLReasoner reasoner, OWLClass top) {
+        Taxonomy result = new Taxonomy(reasoner.getUnsatisfiableClasses().getEntities());
+        // class - number of its direct superclasses below the top class
+        Map<OWLClass, Integer> superClasses = new HashMap<>();
+        Deque<OWLClass> queue = new ArrayDeque<>();
+        queue.add(top);
+        while (!queue.isEmpty() && !isCancelled()) {
+            OWLClass clazz = queue.poll();
+            if (!result.unsatisfiable.contains(clazz) && !result.subClasses.containsKey(clazz)) {
+                Set<OWLClass> children = reasoner.getSubClasses(clazz, true).getFlattened();
+                result.subClasses.put(clazz, children);
+                for (OWLClass childClass : children) {
+                    Integer count = superClasses.get(childClass);
+                    superClasses.put(childClass, null == count ? 1 : count + 1);
+                    if (null == count) {
+                        result.firstParents.put(childClass, clazz);
+                    }
+                    queue.add(childClass);
+                }
+            }
         }
 
-        public void visit(OWLSubAnnotationPropertyOfAxiom axiom) {
+        if (!multipleParents && log.isWarnEnabled()) {
+            for (Map.Entry<OWLClass, Integer> e : superClasses.entrySet()) {
+                if (1 < e.getValue() && result.subClasses.containsKey(e.getKey())) {
+                    log.warn("Multiple superclasses:\t" + e.getKey().toStringID());
+                }
+            }
         }
-
-        public void visit(OWLAnnotationProperty property) {
+        if (log.isInfoEnabled()) {
+            log.info("Taxonomy classes: " + result.subClasses.size() + ", unsatisfiable: " + result.unsatisfiable.size());
         }
+        return result;
+    }
 
-        public void visit(OWLAnnotationValue value) {
+    /**
+     * Counts the nodes of the subtree of the class, that is, the number of paths to the class descendants.
+     */
+    private long countNodes(Taxonomy taxonomy, OWLClass clazz, Map<OWLClass, Long> counts) {
+        Long result = counts.get(clazz);
+        if (null == result) {
+            result = 1L;
+            Set<OWLClass> children = taxonomy.subClasses.get(clazz);
+            if (null != children) {
+                for (OWLClass childClass : children) {
+                    if ((!excludeNothing || !NOTHING_CLASS.equals(childClass)) && !childClass.equals(clazz)) {
+                        if (isReference(taxonomy, clazz, childClass)) {
+                            result++;
+                        } else {
+                            result += countNodes(taxonomy, childClass, counts);
+                        }
+                    }
+                }
+            }
+            counts.put(clazz, result);
         }
+        return result;
+    }
 
-
-        public String getResult() {
-            return result;
+    private void buildHierarchy(Taxonomy taxonomy, Map<IRI, String> labels, IContext c, INode root, OWLClass clazz) {
+        if (!isCancelled()) {
+            for (INode childNode : createChildren(taxonomy, labels, c, root, clazz)) {
+                buildHierarchy(taxonomy, labels, c, childNode, (OWLClass) childNode.getUserObject());
+            }
         }
     }
 
-    public void buildHierarchy(OWLReasoner reasoner, OWLOntology o, IContext c, INode root, OWLClass clazz) throws OWLException {
-        if (reasoner.isSatisfiable(clazz)) {
-            if (1 < reasoner.getSuperClasses(clazz, true).getFlattened().size()) {
-                if (log.isWarnEnabled()) {
-                    log.warn("Multiple superclasses:\t" + clazz.toStringID());
-                }
-            }
-            for (OWLClass childClass : reasoner.getSubClasses(clazz, true).getFlattened()) {
+    /**
+     * Creates the nodes of the direct subclasses of the class and adds them to the node of the class.
+     * The subclasses are kept as the user objects of the nodes.
+     */
+    private List<INode> createChildren(Taxonomy taxonomy, Map<IRI, String> labels, IContext c, INode root, OWLClass clazz) {
+        List<INode> result = new ArrayList<>();
+        Set<OWLClass> children = taxonomy.subClasses.get(clazz);
+        if (null != children) {
+            for (OWLClass childClass : children) {
                 if (!excludeNothing || !NOTHING_CLASS.equals(childClass)) {
-                    if (!childClass.equals(clazz)) {
-                        INode childNode = c.createNode(labelFor(o, childClass));
+                    if (isReference(taxonomy, clazz, childClass)) {
+                        // the target might be not yet created, the provenance refers to it
+                        nodeCreated(ReferenceNodes.createReference(c, root, labelFor(labels, childClass), childClass.getIRI().toString()));
+                    } else if (!childClass.equals(clazz)) {
+                        INode childNode = c.createNode(labelFor(labels, childClass));
                         childNode.nodeData().setProvenance(childClass.getIRI().toString());
+                        childNode.setUserObject(childClass);
                         root.addChild(childNode);
-                        buildHierarchy(reasoner, o, c, childNode, childClass);
+                        nodeCreated(childNode);
+                        result.add(childNode);
                     } else {
                         if (log.isWarnEnabled()) {
                             log.warn("Subclass equal to class:\t" + clazz.toStringID());
@@ -138,6 +329,70 @@ public class OWLContextLoader extends BaseContextLoader<IContext, INode> impleme
                 }
             }
         }
+        return result;
+    }
+
+    /**
+     * Returns whether the class is placed under the superclass as a reference.
+     */
+    private boolean isReference(Taxonomy taxonomy, OWLClass superClass, OWLClass clazz) {
+        return multipleParents && !clazz.equals(superClass) && !superClass.equals(taxonomy.firstParents.get(clazz));
+    }
+
+    /**
+     * Builds the subtree of the node and then its child subtrees in parallel.
+     */
+    private class SubtreeTask extends RecursiveAction {
+
+        private final Taxonomy taxonomy;
+        private final Map<IRI, String> labels;
+        private final IContext c;
+        private final INode node;
+
+        public SubtreeTask(Taxonomy taxonomy, Map<IRI, String> labels, IContext c, INode node) {
+            this.taxonomy = taxonomy;
+            this.labels = labels;
+            this.c = c;
+            this.node = node;
+        }
+
+        @Override
+        protected void compute() {
+            if (OWLContextLoader.this.isCancelled()) {
+                return;
+            }
+            List<SubtreeTask> subtrees = new ArrayList<>();
+            for (INode childNode : createChildren(taxonomy, labels, c, node, (OWLClass) node.getUserObject())) {
+                subtrees.add(new SubtreeTask(taxonomy, labels, c, childNode));
+            }
+            invokeAll(subtrees);
+        }
+    }
+
+    private void buildHierarchy(Taxonomy taxonomy, Map<IRI, String> labels, IContext c, INode root) {
+        int threads = 0 == parallelism ? Runtime.getRuntime().availableProcessors() : parallelism;
+        if (threads <= 1) {
+            buildHierarchy(taxonomy, labels, c, root, (OWLClass) root.getUserObject());
+        } else {
+            if (log.isInfoEnabled()) {
+                log.info("Building hierarchy using threads: " + threads);
+            }
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                pool.invoke(new SubtreeTask(taxonomy, labels, c, root));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        // the classes were needed only while building
+        clearUserObjects(root);
+    }
+
+    private static void clearUserObjects(INode node) {
+        node.setUserObject(null);
+        for (int i = 0; i < node.getChildCount(); i++) {
+            clearUserObjects(node.getChildAt(i));
+        }
     }
 
     public IContext loadContext(String fileName) throws ContextLoaderException {
@@ -150,11 +405,23 @@ public class OWLContextLoader extends BaseContextLoader<IContext, INode> impleme
                 fileName = "file:///" + f.getAbsolutePath().replace('\\', '/');
             }
             IRI iri = IRI.create(fileName);
+            long start = System.currentTimeMillis();
             OWLOntology o = manager.loadOntologyFromOntologyDocument(iri);
+            if (log.isInfoEnabled()) {
+                log.info("Loaded ontology in " + (System.currentTimeMillis() - start) + " ms");
+            }
+            if (isCancelled()) {
+                return result;
+            }
 
-            OWLReasonerFactory reasonerFactory = new Reasoner.ReasonerFactory();
+            start = System.currentTimeMillis();
+            OWLReasonerFactory reasonerFactory = structural ? new StructuralReasonerFactory() : new Reasoner.ReasonerFactory();
             OWLReasoner reasoner = reasonerFactory.createReasoner(o);
             reasoner.precomputeInferences();
+            if (log.isInfoEnabled()) {
+                log.info("Precomputed inferences with " + reasoner.getReasonerName() + " in " + (System.currentTimeMillis() - start) + " ms");
+            }
+            start = System.currentTimeMillis();
 
             OWLClass top = null;
             if (null != topClass) {
@@ -169,15 +436,57 @@ public class OWLContextLoader extends BaseContextLoader<IContext, INode> impleme
                 top = manager.getOWLDataFactory().getOWLClass(classIRI);
             }
 
-            buildHierarchy(reasoner, o, result, result.createRoot(labelFor(o, top)), top);
+            Map<IRI, String> labels = indexLabels(o);
+            if (snapshot) {
+                Taxonomy taxonomy = snapshot(reasoner, top);
+                List<OWLClass> unsatisfiable = new ArrayList<>();
+                for (OWLClass cl : taxonomy.unsatisfiable) {
+                    if (o.containsClassInSignature(cl.getIRI())) {
+                        unsatisfiable.add(cl);
+                    }
+                }
+                created.set(0);
+                setTotal(countNodes(taxonomy, top, new HashMap<OWLClass, Long>()) + unsatisfiable.size());
+
+                INode root = result.createRoot(labelFor(labels, top));
+                root.setUserObject(top);
+                nodeCreated(root);
+                buildHierarchy(taxonomy, labels, result, root);
 
-            /* Now any unsatisfiable classes */
-            for (OWLClass cl : o.getClassesInSignature()) {
-                if (!reasoner.isSatisfiable(cl)) {
-                    INode node = result.createNode(labelFor(o, cl));
+                /* Now any unsatisfiable classes */
+                for (OWLClass cl : unsatisfiable) {
+                    INode node = result.createNode(labelFor(labels, cl));
                     node.nodeData().setProvenance(cl.getIRI().toString());
                     result.getRoot().addChild(node);
+                    nodeCreated(node);
                 }
+            } else {
+                List<OWLClass> unsatisfiable = new ArrayList<>();
+                for (OWLClass cl : o.getClassesInSignature()) {
+                    if (!reasoner.isSatisfiable(cl)) {
+                        unsatisfiable.add(cl);
+                    }
+                }
+                // the total stays unknown, the progress is indeterminate
+                created.set(0);
+                INode root = result.createRoot(labelFor(labels, top));
+                nodeCreated(root);
+                buildHierarchy(reasoner, labels, result, root, top, new HashMap<OWLClass, INode>());
+
+                /* Now any unsatisfiable classes */
+                for (OWLClass cl : unsatisfiable) {
+                    if (isCancelled()) {
+                        break;
+                    }
+                    INode node = result.createNode(labelFor(labels, cl));
+                    node.nodeData().setProvenance(cl.getIRI().toString());
+                    result.getRoot().addChild(node);
+                    nodeCreated(node);
+                }
+            }
+
+            if (log.isInfoEnabled()) {
+                log.info("Built hierarchy in " + (System.currentTimeMillis() - start) + " ms");
             }
 
             createIds(result);
@@ -196,26 +505,50 @@ public class OWLContextLoader extends BaseContextLoader<IContext, INode> impleme
         return ILoader.LoaderType.FILE;
     }
 
-    private String labelFor(OWLOntology ontology, OWLClass clazz) {
-        String result;
-        LabelExtractor le = new LabelExtractor();
-        Set<OWLAnnotation> annotations = clazz.getAnnotations(ontology);
-        for (OWLAnnotation anno : annotations) {
-            anno.accept(le);
+    /**
+     * Collects the labels of the entities of the ontology in one pass over its annotation assertions.
+     * Of several labels of an entity, the one in the preferred language is taken, then the one without language,
+     * then any.
+     *
+     * @param o ontology
+     * @return IRI - label
+     */
+    private Map<IRI, String> indexLabels(OWLOntology o) {
+        Map<IRI, String> result = new HashMap<>();
+        // IRI - rank of the label language
+        Map<IRI, Integer> ranks = new HashMap<>();
+        for (OWLAnnotationAssertionAxiom axiom : o.getAxioms(AxiomType.ANNOTATION_ASSERTION)) {
+            if (axiom.getProperty().isLabel() && axiom.getSubject() instanceof IRI && axiom.getValue() instanceof OWLLiteral) {
+                IRI subject = (IRI) axiom.getSubject();
+                OWLLiteral literal = (OWLLiteral) axiom.getValue();
+                int rank = literal.hasLang(preferredLanguage) && !preferredLanguage.isEmpty() ? 2 : (literal.hasLang() ? 0 : 1);
+                Integer previous = ranks.get(subject);
+                if (null == previous || previous < rank) {
+                    ranks.put(subject, rank);
+                    String label = literal.getLiteral();
+                    result.put(subject, replaceUnderscore ? label.replace('_', ' ') : label);
+                }
+            }
         }
-        /* Print out the label if there is one. If not, just use the class URI */
-        if (le.getResult() != null) {
-            result = le.getResult();
-        } else {
+        if (log.isDebugEnabled()) {
+            log.debug("Indexed labels: " + result.size());
+        }
+        return result;
+    }
+
+    private String labelFor(Map<IRI, String> labels, OWLClass clazz) {
+        String result = labels.get(clazz.getIRI());
+        /* Use the label if there is one. If not, just use the class URI */
+        if (null == result) {
             if (null != clazz.getIRI().getFragment() && !clazz.getIRI().getFragment().isEmpty()) {
                 result = clazz.getIRI().getFragment();
             } else {
                 result = clazz.getIRI().toString();
             }
-        }
-        if (replaceUnderscore) {
-            result = result.replaceAll("_", " ");
+            if (replaceUnderscore) {
+                result = result.replace('_', ' ');
+            }
         }
         return result;
     }
-}
\ No newline at end of file
+}
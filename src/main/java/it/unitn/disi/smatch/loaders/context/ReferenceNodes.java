@@ -0,0 +1,235 @@
+package it.unitn.disi.smatch.loaders.context;
+
+import it.unitn.disi.smatch.data.ling.IAtomicConceptOfLabel;
+import it.unitn.disi.smatch.data.trees.IContext;
+import it.unitn.disi.smatch.data.trees.INode;
+import it.unitn.disi.smatch.data.trees.INodeData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps concepts with several parents in a tree without loading and preprocessing their subtrees more than once.
+ * <p/>
+ * The node of the concept with its subtree is placed under one of the parents. Under each other parent
+ * a reference node is placed: a leaf with the name and the provenance of the concept node. The provenance links
+ * the reference to its target, therefore the link is kept in the node data and survives rendering: a leaf which has
+ * the provenance of a node with children refers to that node.
+ * <p/>
+ * Before the node formulas are built, {@link #expand(IContext)} shares the subtree of the target with each reference:
+ * the copies under the reference get the names, the provenance and the concepts of the target subtree, the same
+ * concept instances with their senses, and the label formulas with the atoms renamed to the ids of the copies.
+ * Only the node formulas are built per copy, because they depend on the path. Thus the descendants of a concept are
+ * matched along each of its paths, while the ontology is loaded and the labels are preprocessed once.
+ *
+ * @author agent
+ */
+public final class ReferenceNodes {
+
+    private static final Logger log = LoggerFactory.getLogger(ReferenceNodes.class);
+
+    private ReferenceNodes() {
+    }
+
+    /**
+     * Creates a reference to the target node under the parent.
+     *
+     * @param context context to create the node in
+     * @param parent  additional parent of the target
+     * @param target  node to refer to
+     * @return reference node
+     */
+    public static INode createReference(IContext context, INode parent, INode target) {
+        return createReference(context, parent, target.nodeData().getName(), target.nodeData().getProvenance());
+    }
+
+    /**
+     * Creates a reference node under the parent, for a target node which might be not created yet.
+     *
+     * @param context    context to create the node in
+     * @param parent     additional parent of the target
+     * @param name       name of the target
+     * @param provenance provenance of the target
+     * @return reference node
+     */
+    public static INode createReference(IContext context, INode parent, String name, String provenance) {
+        INode result = context.createNode(name);
+        result.nodeData().setProvenance(provenance);
+        parent.addChild(result);
+        return result;
+    }
+
+    /**
+     * Finds the reference nodes of the context: the leaves which have the provenance of a node with children.
+     * A provenance of several nodes with children, as in a duplicated subtree, gives no references.
+     *
+     * @param context context
+     * @return reference node - target node
+     */
+    public static Map<INode, INode> getReferences(IContext context) {
+        Map<INode, INode> result = new IdentityHashMap<>();
+        if (null == context.getRoot()) {
+            return result;
+        }
+        // provenance - node with children, null if there are several
+        Map<String, INode> targets = new HashMap<>();
+        for (Iterator<INode> i = context.nodeIterator(); i.hasNext(); ) {
+            INode node = i.next();
+            String provenance = node.nodeData().getProvenance();
+            if (null != provenance && 0 < node.getChildCount()) {
+                targets.put(provenance, targets.containsKey(provenance) ? null : node);
+            }
+        }
+        if (!targets.isEmpty()) {
+            for (Iterator<INode> i = context.nodeIterator(); i.hasNext(); ) {
+                INode node = i.next();
+                if (0 == node.getChildCount()) {
+                    INode target = targets.get(node.nodeData().getProvenance());
+                    if (null != target) {
+                        result.put(node, target);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Shares the subtree of each target with its reference nodes. References in the shared subtrees are expanded
+     * as well, except those which would repeat a concept along the path.
+     *
+     * @param context context with label formulas and without node formulas
+     * @return number of nodes created
+     */
+    public static int expand(IContext context) {
+        Map<INode, INode> references = getReferences(context);
+        if (references.isEmpty()) {
+            return 0;
+        }
+
+        Set<String> ids = new HashSet<>();
+        for (Iterator<INode> i = context.nodeIterator(); i.hasNext(); ) {
+            ids.add(i.next().nodeData().getId());
+        }
+        IdGenerator generator = new IdGenerator(ids);
+
+        int expanded = 0;
+        int created = 0;
+        int cycles = 0;
+        Deque<INode> queue = new ArrayDeque<>(references.keySet());
+        while (!queue.isEmpty()) {
+            INode reference = queue.poll();
+            INode target = references.get(reference);
+            if (onPath(reference)) {
+                cycles++;
+                if (log.isWarnEnabled()) {
+                    log.warn("Cycle found: " + reference.getParent().nodeData().getName() + " -> " + reference.nodeData().getName());
+                }
+                continue;
+            }
+            expanded++;
+            for (int i = 0; i < target.getChildCount(); i++) {
+                created += copy(context, target.getChildAt(i), reference, references, queue, generator);
+            }
+        }
+
+        if (log.isInfoEnabled()) {
+            log.info("Reference nodes expanded: " + expanded + ", nodes created: " + created);
+            if (0 < cycles) {
+                log.info("Reference nodes left unexpanded because of cycles: " + cycles);
+            }
+        }
+        return created;
+    }
+
+    /**
+     * Returns whether an ancestor of the reference has its provenance.
+     */
+    private static boolean onPath(INode reference) {
+        String provenance = reference.nodeData().getProvenance();
+        for (Iterator<INode> i = reference.ancestorsIterator(); i.hasNext(); ) {
+            if (provenance.equals(i.next().nodeData().getProvenance())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Copies the subtree of the source under the parent. The copies of reference nodes are queued for expansion
+     * instead of copying what is under them.
+     *
+     * @return number of nodes created
+     */
+    private static int copy(IContext context, INode source, INode parent, Map<INode, INode> references,
+                            Deque<INode> queue, IdGenerator generator) {
+        INodeData sourceData = source.nodeData();
+        INode result = context.createNode(sourceData.getName());
+        INodeData data = result.nodeData();
+        String id = generator.next();
+        data.setId(id);
+        data.setProvenance(sourceData.getProvenance());
+        for (IAtomicConceptOfLabel concept : sourceData.getConcepts()) {
+            data.addConcept(concept);
+        }
+        data.setLabelFormula(renameAtoms(sourceData.getLabelFormula(), sourceData.getId(), id));
+        data.setIsPreprocessed(sourceData.getIsPreprocessed());
+        parent.addChild(result);
+
+        int created = 1;
+        INode target = references.get(source);
+        if (null != target) {
+            // the source might be expanded already, the copy is expanded on its own path
+            references.put(result, target);
+            queue.add(result);
+        } else {
+            for (int i = 0; i < source.getChildCount(); i++) {
+                created += copy(context, source.getChildAt(i), result, references, queue, generator);
+            }
+        }
+        return created;
+    }
+
+    /**
+     * Renames the atoms of a label formula, which are written as node id, dot, concept id.
+     */
+    private static String renameAtoms(String formula, String id, String newId) {
+        if (null == formula || null == id) {
+            return formula;
+        }
+        Pattern atom = Pattern.compile("(?<![\\w.])" + Pattern.quote(id + ".") + "(?=\\d)");
+        return atom.matcher(formula).replaceAll(Matcher.quoteReplacement(newId + "."));
+    }
+
+    /**
+     * Generates the ids of the copies, skipping the ids taken.
+     */
+    private static class IdGenerator {
+
+        private final Set<String> taken;
+        private int next;
+
+        private IdGenerator(Set<String> taken) {
+            this.taken = taken;
+            this.next = taken.size();
+        }
+
+        private String next() {
+            String result;
+            do {
+                result = "n" + next++;
+            } while (!taken.add(result));
+            return result;
+        }
+    }
+}
@@ -6,10 +6,12 @@ import it.unitn.disi.smatch.data.trees.INode;
 import it.unitn.disi.smatch.loaders.ILoader;
 import org.semanticweb.HermiT.Reasoner;
 import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.reasoner.structural.StructuralReasonerFactory;
 import org.semanticweb.skos.SKOSConcept;
 import org.semanticweb.skos.SKOSCreationException;
 import org.semanticweb.skos.SKOSDataset;
 import org.semanticweb.skos.SKOSLiteral;
+import org.semanticweb.skos.SKOSObjectRelationAssertion;
 import org.semanticweb.skos.properties.SKOSAltLabelProperty;
 import org.semanticweb.skos.properties.SKOSPrefLabelProperty;
 import org.semanticweb.skosapibinding.SKOSManager;
@@ -20,6 +22,10 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -28,6 +34,19 @@ import java.util.Set;
  * Takes in a preferredLanguage parameter, which defines the language which should be preferred for labels.
  * If specified, the loader will search for the label in the specified language among preferred labels and then among
  * alternative labels.
+ * <p/>
+ * Takes in a multipleParents parameter, which specifies whether to keep all broader concepts of a concept.
+ * By default only one is kept. Otherwise the concept is placed under one of them and under each other
+ * a {@link ReferenceNodes reference node} is placed, which shares the subtree of the concept once the context
+ * is classified.
+ * <p/>
+ * Takes in a singlePass parameter, which specifies whether to build the hierarchy from the asserted BTs and NTs,
+ * collected into an edge list in one pass over the concepts, instead of asking the reasoner for the BTs and then
+ * for the NTs of each concept. Nothing is inferred then: a structural reasoner lists the concepts instead of HermiT,
+ * and the concepts are not kept as user objects of the nodes.
+ * <p/>
+ * To match a thesaurus in several languages, {@link #loadMultilingualContext(String)} loads it once with the labels
+ * in all languages and gives a context in each language without loading it again.
  *
  * @author <a rel="author" href="http://autayeu.com/">Aliaksandr Autayeu</a>
  */
@@ -40,26 +59,47 @@ public class SKOSContextLoader extends BaseContextLoader<IContext, INode> implem
 
     private final boolean precompute;
 
+    // whether to refer to a concept under its other broader concepts
+    private final boolean multipleParents;
+
+    // whether to build the hierarchy from the asserted BTs and NTs in one pass
+    private final boolean singlePass;
+
     public SKOSContextLoader() {
         preferredLanguage = "";
         precompute = true;
+        multipleParents = false;
+        singlePass = false;
     }
 
     public SKOSContextLoader(String preferredLanguage, boolean precompute) {
+        this(preferredLanguage, precompute, false);
+    }
+
+    public SKOSContextLoader(String preferredLanguage, boolean precompute, boolean multipleParents) {
+        this(preferredLanguage, precompute, multipleParents, false);
+    }
+
+    public SKOSContextLoader(String preferredLanguage, boolean precompute, boolean multipleParents, boolean singlePass) {
         this.preferredLanguage = preferredLanguage;
         this.precompute = precompute;
+        this.multipleParents = multipleParents;
+        this.singlePass = singlePass;
     }
 
     public IContext loadContext(String fileName) throws ContextLoaderException {
         IContext result = new Context();
         try {
-            //check location whether it is URL or not
-            if (!fileName.startsWith("http://") && !fileName.startsWith("file://")) {
-                File f = new File(fileName);
-                fileName = "file:///" + f.getAbsolutePath().replace('\\', '/');
-            }
             SKOSManager manager = new SKOSManager();
-            SKOSDataset dataSet = manager.loadDatasetFromPhysicalIRI(IRI.create(fileName));
+            SKOSDataset dataSet = manager.loadDatasetFromPhysicalIRI(toIRI(fileName));
+            if (singlePass) {
+                // nothing is inferred, the reasoner only lists the concepts
+                SKOSReasoner reasoner = new SKOSReasoner(manager, new StructuralReasonerFactory());
+                reasoner.loadDataset(dataSet);
+                buildSinglePass(result, manager, dataSet, reasoner);
+                createIds(result);
+                return result;
+            }
             SKOSReasoner reasoner = new SKOSReasoner(manager, new Reasoner.ReasonerFactory());
             reasoner.loadDataset(dataSet);
             if (precompute) {
@@ -68,6 +108,8 @@ public class SKOSContextLoader extends BaseContextLoader<IContext, INode> implem
 
             // IRI - INode
             Map<String, INode> conceptNode = new HashMap<>();
+            // INode - number, for the ancestry checks
+            Map<INode, Integer> nodeNumber = new IdentityHashMap<>();
             Set<SKOSConcept> skosConcepts = reasoner.getSKOSConcepts();
             if (log.isInfoEnabled()) {
                 log.info("Loaded SKOS concepts: " + skosConcepts.size());
@@ -80,54 +122,16 @@ public class SKOSContextLoader extends BaseContextLoader<IContext, INode> implem
                     log.debug("Importing: " + concept.getIRI());
                 }
 
-                String nodeName = "";
-
-                // get a node name from pref labels
-                SKOSPrefLabelProperty prefLabelProperty = manager.getSKOSDataFactory().getSKOSPrefLabelProperty();
-                for (SKOSLiteral literal : concept.getSKOSRelatedConstantByProperty(dataSet, prefLabelProperty)) {
-                    if (null != preferredLanguage && preferredLanguage.isEmpty()) {
-                        nodeName = literal.getLiteral();
-                        break;
-                    } else {
-                        if (preferredLanguage.equals(literal.getAsSKOSUntypedLiteral().getLang())) {
-                            nodeName = literal.getLiteral();
-                            break;
-                        }
-                    }
-                }
-
-                // get a node name from alt labels
-                if (null != nodeName && nodeName.isEmpty()) {
-                    SKOSAltLabelProperty altLabelProperty = manager.getSKOSDataFactory().getSKOSAltLabelProperty();
-                    for (SKOSLiteral literal : concept.getSKOSRelatedConstantByProperty(dataSet, altLabelProperty)) {
-                        if (preferredLanguage.isEmpty()) {
-                            nodeName = literal.getLiteral();
-                            break;
-                        } else {
-                            if (preferredLanguage.equals(literal.getAsSKOSUntypedLiteral().getLang())) {
-                                nodeName = literal.getLiteral();
-                                break;
-                            }
-                        }
-                    }
-                }
-
-                if (null != nodeName && nodeName.isEmpty()) {
+                String nodeName = getLabel(manager, dataSet, concept);
+                if (nodeName.isEmpty()) {
                     unlabeledNodeCount++;
-                    if (log.isWarnEnabled()) {
-                        log.warn("Label is not found in language " + preferredLanguage + " for a concept: " + concept.getIRI());
-                        log.warn("Creating unlabeled node...");
-                    }
-                } else {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Creating a node: " + nodeName);
-                    }
                 }
 
                 INode node = result.createNode(nodeName);
                 node.nodeData().setProvenance(concept.getIRI().toString());
                 node.setUserObject(concept);
                 conceptNode.put(concept.getIRI().toString(), node);
+                nodeNumber.put(node, nodeNumber.size());
             }
 
             if (0 < unlabeledNodeCount) {
@@ -142,6 +146,9 @@ public class SKOSContextLoader extends BaseContextLoader<IContext, INode> implem
 
             int countBT = 0;
             int linksCreated = 0;
+            // child - other parents, for reference nodes
+            Map<INode, Set<INode>> otherParents = new LinkedHashMap<>();
+            Ancestry ancestry = new Ancestry(nodeNumber.size());
 
             // create hierarchy via BTs
             for (Map.Entry<String, INode> e : conceptNode.entrySet()) {
@@ -155,23 +162,32 @@ public class SKOSContextLoader extends BaseContextLoader<IContext, INode> implem
                 countBT = countBT + parents.size();
 
                 // there can be multiple BTs
-                // either discard, or duplicate the subtree in two places
-                // discard for now all but one
-                if (1 < parents.size()) {
+                // either discard all but one, or refer to the concept from the others
+                if (1 < parents.size() && !multipleParents) {
                     if (log.isWarnEnabled()) {
                         log.warn("Multiple BTs are found for the concept: " + conceptIRI);
                     }
                 }
-                if (parents.iterator().hasNext()) {
-                    SKOSConcept parentConcept = parents.iterator().next();
+                Iterator<SKOSConcept> parentIterator = parents.iterator();
+                if (parentIterator.hasNext()) {
+                    SKOSConcept parentConcept = parentIterator.next();
                     INode parentNode = conceptNode.get(parentConcept.getIRI().toString());
                     if (log.isDebugEnabled()) {
                         log.debug("Choosing as a parent BT: " + parentConcept.getIRI());
                         log.debug(child.nodeData().getName() + " -> BT -> " + parentNode.nodeData().getName());
                     }
 
-                    parentNode.addChild(child);
-                    linksCreated++;
+                    if (ancestry.link(nodeNumber.get(parentNode), nodeNumber.get(child))) {
+                        parentNode.addChild(child);
+                        linksCreated++;
+                    } else {
+                        if (log.isWarnEnabled()) {
+                            log.warn("Cycle found: " + parentNode.nodeData().getName() + " -> " + child.nodeData().getName());
+                        }
+                    }
+                }
+                while (multipleParents && parentIterator.hasNext()) {
+                    addOtherParent(otherParents, child, conceptNode.get(parentIterator.next().getIRI().toString()));
                 }
             }
 
@@ -201,7 +217,9 @@ public class SKOSContextLoader extends BaseContextLoader<IContext, INode> implem
                     // either discard, or duplicate the subtree in two places
                     // discard for now all but one
                     if (child.hasParent()) {
-                        if (log.isWarnEnabled()) {
+                        if (multipleParents) {
+                            addOtherParent(otherParents, child, parent);
+                        } else if (log.isWarnEnabled()) {
                             log.warn("Keeping previously set parent: child: " + child.nodeData().getName() + " -> parent: " + child.getParent().nodeData().getName());
                             log.warn("Multiple BTs are found for the concept: " + conceptIRI);
                         }
@@ -211,18 +229,13 @@ public class SKOSContextLoader extends BaseContextLoader<IContext, INode> implem
                             log.debug(parent.nodeData().getName() + " -> NT -> " + child.nodeData().getName());
                         }
 
-                        int childIndex = parent.getChildIndex(child);
-                        if (-1 == childIndex) {
-                            if (!checkCycle(parent, child)) {
-                                parent.addChild(child);
-                                linksCreated++;
-                            } else {
-                                log.warn("Cycle found: " + parent.nodeData().getName() + " -> " + child.nodeData().getName());
-                            }
+                        // the child has no parent, so it is not under this parent yet
+                        if (ancestry.link(nodeNumber.get(parent), nodeNumber.get(child))) {
+                            parent.addChild(child);
+                            linksCreated++;
                         } else {
                             if (log.isWarnEnabled()) {
-                                log.warn("Child already exist under this parent: " + parent.nodeData().getName() + " -> child -> " + child.nodeData().getName());
-                                log.warn("Duplicated NT or label: " + conceptIRI + " -> NT -> " + childConcept.getIRI());
+                                log.warn("Cycle found: " + parent.nodeData().getName() + " -> " + child.nodeData().getName());
                             }
                         }
                     }
@@ -234,6 +247,36 @@ public class SKOSContextLoader extends BaseContextLoader<IContext, INode> implem
                 log.info("Parent-child relations established: " + linksCreated);
             }
 
+            if (multipleParents) {
+                int[] parents = new int[nodeNumber.size()];
+                for (Map.Entry<INode, Integer> e : nodeNumber.entrySet()) {
+                    INode node = e.getKey();
+                    parents[e.getValue()] = node.hasParent() ? nodeNumber.get(node.getParent()) : Ancestry.NONE;
+                }
+                ancestry.index(parents);
+
+                int referencesCreated = 0;
+                for (Map.Entry<INode, Set<INode>> e : otherParents.entrySet()) {
+                    INode child = e.getKey();
+                    for (INode parent : e.getValue()) {
+                        // the parent might have become the parent of the child later
+                        if (child.getParent() != parent) {
+                            if (!ancestry.isAncestor(nodeNumber.get(child), nodeNumber.get(parent))) {
+                                ReferenceNodes.createReference(result, parent, child);
+                                referencesCreated++;
+                            } else {
+                                if (log.isWarnEnabled()) {
+                                    log.warn("Cycle found: " + parent.nodeData().getName() + " -> " + child.nodeData().getName());
+                                }
+                            }
+                        }
+                    }
+                }
+                if (log.isInfoEnabled()) {
+                    log.info("Reference nodes created: " + referencesCreated);
+                }
+            }
+
 
             if (log.isInfoEnabled()) {
                 log.info("Checking multiple roots...");
@@ -283,16 +326,167 @@ public class SKOSContextLoader extends BaseContextLoader<IContext, INode> implem
         return result;
     }
 
-    private boolean checkCycle(INode parent, INode child) {
-        INode ancestor = parent;
+    /**
+     * Loads the thesaurus once with its labels in all languages. The contexts in each language are created from it
+     * without loading the thesaurus again. The hierarchy is built from the asserted BTs and NTs, as with
+     * the singlePass parameter, and the preferredLanguage parameter is not used.
+     *
+     * @param fileName file to load
+     * @return thesaurus giving a context in each language
+     * @throws ContextLoaderException ContextLoaderException
+     */
+    public MultilingualContext loadMultilingualContext(String fileName) throws ContextLoaderException {
+        try {
+            SKOSManager manager = new SKOSManager();
+            SKOSDataset dataSet = manager.loadDatasetFromPhysicalIRI(toIRI(fileName));
+            SKOSReasoner reasoner = new SKOSReasoner(manager, new StructuralReasonerFactory());
+            reasoner.loadDataset(dataSet);
+            ConceptHierarchy hierarchy = new ConceptHierarchy();
+            LabelTable labels = new LabelTable();
+            collectSinglePass(hierarchy, labels, manager, dataSet, reasoner);
+            if (log.isInfoEnabled()) {
+                log.info("Label languages: " + labels.getLanguages());
+            }
+            return new MultilingualContext(this, hierarchy, labels, multipleParents);
+        } catch (SKOSCreationException e) {
+            throw new ContextLoaderException(e.getClass().getSimpleName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static IRI toIRI(String fileName) {
+        //check location whether it is URL or not
+        if (!fileName.startsWith("http://") && !fileName.startsWith("file://")) {
+            File f = new File(fileName);
+            fileName = "file:///" + f.getAbsolutePath().replace('\\', '/');
+        }
+        return IRI.create(fileName);
+    }
+
+    /**
+     * Builds the hierarchy from the edge list of BTs and NTs, reading the assertions of each concept once.
+     */
+    private void buildSinglePass(IContext result, SKOSManager manager, SKOSDataset dataSet, SKOSReasoner reasoner) throws ContextLoaderException {
+        long start = System.currentTimeMillis();
+        ConceptHierarchy hierarchy = new ConceptHierarchy();
+        collectSinglePass(hierarchy, null, manager, dataSet, reasoner);
+        hierarchy.build(result, multipleParents);
+        if (log.isInfoEnabled()) {
+            log.info("Hierarchy built in " + (System.currentTimeMillis() - start) + " ms");
+        }
+    }
+
+    /**
+     * Collects the concepts and the edge list of BTs and NTs. With the label table the labels in all languages
+     * go there, otherwise the concepts are labeled in the preferred language.
+     */
+    private void collectSinglePass(ConceptHierarchy hierarchy, LabelTable labels, SKOSManager manager, SKOSDataset dataSet, SKOSReasoner reasoner) {
+        IRI broader = manager.getSKOSDataFactory().getSKOSBroaderProperty().getIRI();
+        IRI narrower = manager.getSKOSDataFactory().getSKOSNarrowerProperty().getIRI();
+
+        Set<SKOSConcept> skosConcepts = reasoner.getSKOSConcepts();
+        if (log.isInfoEnabled()) {
+            log.info("Loaded SKOS concepts: " + skosConcepts.size());
+        }
+
+        SKOSPrefLabelProperty prefLabelProperty = manager.getSKOSDataFactory().getSKOSPrefLabelProperty();
+        SKOSAltLabelProperty altLabelProperty = manager.getSKOSDataFactory().getSKOSAltLabelProperty();
+        int unlabeledNodeCount = 0;
+        for (SKOSConcept concept : skosConcepts) {
+            String conceptIRI = concept.getIRI().toString();
+            if (null == labels) {
+                String nodeName = getLabel(manager, dataSet, concept);
+                if (nodeName.isEmpty()) {
+                    unlabeledNodeCount++;
+                }
+                hierarchy.addConcept(conceptIRI, nodeName);
+            } else {
+                int number = hierarchy.addConcept(conceptIRI);
+                for (SKOSLiteral literal : concept.getSKOSRelatedConstantByProperty(dataSet, prefLabelProperty)) {
+                    labels.add(number, getLanguage(literal), true, literal.getLiteral());
+                }
+                for (SKOSLiteral literal : concept.getSKOSRelatedConstantByProperty(dataSet, altLabelProperty)) {
+                    labels.add(number, getLanguage(literal), false, literal.getLiteral());
+                }
+            }
+
+            for (SKOSObjectRelationAssertion assertion : dataSet.getSKOSObjectRelationAssertions(concept)) {
+                IRI property = assertion.getSKOSProperty().getIRI();
+                if (broader.equals(property)) {
+                    hierarchy.addBroader(conceptIRI, assertion.getSKOSObject().getIRI().toString());
+                } else if (narrower.equals(property)) {
+                    hierarchy.addBroader(assertion.getSKOSObject().getIRI().toString(), conceptIRI);
+                }
+            }
+        }
+
+        if (0 < unlabeledNodeCount) {
+            if (log.isInfoEnabled()) {
+                log.info("Created unlabeled nodes: " + unlabeledNodeCount);
+            }
+        }
+    }
+
+    private static String getLanguage(SKOSLiteral literal) {
+        return literal.isTyped() ? "" : literal.getAsSKOSUntypedLiteral().getLang();
+    }
+
+    private String getLabel(SKOSManager manager, SKOSDataset dataSet, SKOSConcept concept) {
+        String nodeName = "";
+
+        // get a node name from pref labels
+        SKOSPrefLabelProperty prefLabelProperty = manager.getSKOSDataFactory().getSKOSPrefLabelProperty();
+        for (SKOSLiteral literal : concept.getSKOSRelatedConstantByProperty(dataSet, prefLabelProperty)) {
+            if (null != preferredLanguage && preferredLanguage.isEmpty()) {
+                nodeName = literal.getLiteral();
+                break;
+            } else {
+                if (preferredLanguage.equals(literal.getAsSKOSUntypedLiteral().getLang())) {
+                    nodeName = literal.getLiteral();
+                    break;
+                }
+            }
+        }
+
+        // get a node name from alt labels
+        if (null != nodeName && nodeName.isEmpty()) {
+            SKOSAltLabelProperty altLabelProperty = manager.getSKOSDataFactory().getSKOSAltLabelProperty();
+            for (SKOSLiteral literal : concept.getSKOSRelatedConstantByProperty(dataSet, altLabelProperty)) {
+                if (preferredLanguage.isEmpty()) {
+                    nodeName = literal.getLiteral();
+                    break;
+                } else {
+                    if (preferredLanguage.equals(literal.getAsSKOSUntypedLiteral().getLang())) {
+                        nodeName = literal.getLiteral();
+                        break;
+                    }
+                }
+            }
+        }
 
-        do {
-            if (ancestor == child) {
-                return true;
+        if (null != nodeName && nodeName.isEmpty()) {
+            if (log.isWarnEnabled()) {
+                log.warn("Label is not found in language " + preferredLanguage + " for a concept: " + concept.getIRI());
+                log.warn("Creating unlabeled node...");
             }
-        } while ((ancestor = ancestor.getParent()) != null);
+        } else {
+            if (log.isDebugEnabled()) {
+                log.debug("Creating a node: " + nodeName);
+            }
+        }
+
+        return nodeName;
+    }
 
-        return false;
+    private static void addOtherParent(Map<INode, Set<INode>> otherParents, INode child, INode parent) {
+        if (null == parent) {
+            return;
+        }
+        Set<INode> parents = otherParents.get(child);
+        if (null == parents) {
+            parents = new LinkedHashSet<>();
+            otherParents.put(child, parents);
+        }
+        parents.add(parent);
     }
 
     public String getDescription() {
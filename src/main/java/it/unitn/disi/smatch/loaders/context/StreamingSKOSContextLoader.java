@@ -0,0 +1,520 @@
+package it.unitn.disi.smatch.loaders.context;
+
+import it.unitn.disi.smatch.data.trees.Context;
+import it.unitn.disi.smatch.data.trees.IContext;
+import it.unitn.disi.smatch.data.trees.INode;
+import it.unitn.disi.smatch.loaders.ILoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Loads a context from a SKOS file by streaming its triples, without SKOS API, OWL API and a reasoner.
+ * <p/>
+ * Files with the .nt extension are read as N-Triples, other files as RDF/XML with a SAX parser. Only the triples
+ * typing skos:Concept and the skos:prefLabel, skos:altLabel, skos:broader and skos:narrower triples are kept, and
+ * only as concept numbers, labels and edges, so the memory needed grows with the number of concepts and edges,
+ * not with the size of the file. The subjects and the objects of skos:broader and skos:narrower are concepts,
+ * as the domain and the range of these properties say.
+ * <p/>
+ * Takes in a preferredLanguage parameter, which defines the language which should be preferred for labels.
+ * If specified, the loader will search for the label in the specified language among preferred labels and then among
+ * alternative labels. Otherwise the first preferred label is taken, or the first alternative one.
+ * <p/>
+ * Takes in a multipleParents parameter, which specifies whether to keep all broader concepts of a concept.
+ * By default only one is kept. Otherwise the concept is placed under one of them and under each other
+ * a {@link ReferenceNodes reference node} is placed, which shares the subtree of the concept once the context
+ * is classified.
+ * <p/>
+ * RDF/XML is supported except for the reification of statements and the contents of rdf:parseType="Literal"
+ * and rdf:parseType="Collection" properties, which are skipped. External entities and DTDs are not read.
+ *
+ * @author agent
+ */
+public class StreamingSKOSContextLoader extends BaseContextLoader<IContext, INode> implements IContextLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamingSKOSContextLoader.class);
+
+    public static final String SKOS = "http://www.w3.org/2004/02/skos/core#";
+    public static final String RDF = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+    public static final String XML = "http://www.w3.org/XML/1998/namespace";
+
+    private static final String RDF_TYPE = RDF + "type";
+    private static final String SKOS_CONCEPT = SKOS + "Concept";
+    private static final String SKOS_PREF_LABEL = SKOS + "prefLabel";
+    private static final String SKOS_ALT_LABEL = SKOS + "altLabel";
+    private static final String SKOS_BROADER = SKOS + "broader";
+    private static final String SKOS_NARROWER = SKOS + "narrower";
+
+    // label ranks, 0 - no label, a label replaces one of a lower rank only
+    private static final byte ALT_LABEL = 1;
+    private static final byte PREF_LABEL = 2;
+
+    // which language to load, default "" - load anything
+    private final String preferredLanguage;
+
+    // whether to refer to a concept under its other broader concepts
+    private final boolean multipleParents;
+
+    public StreamingSKOSContextLoader() {
+        this("", false);
+    }
+
+    public StreamingSKOSContextLoader(String preferredLanguage) {
+        this(preferredLanguage, false);
+    }
+
+    public StreamingSKOSContextLoader(String preferredLanguage, boolean multipleParents) {
+        this.preferredLanguage = null == preferredLanguage ? "" : preferredLanguage;
+        this.multipleParents = multipleParents;
+    }
+
+    public IContext loadContext(String fileName) throws ContextLoaderException {
+        IContext result = new Context();
+        long start = System.currentTimeMillis();
+        Triples triples = new Triples();
+        try {
+            //check location whether it is URL or not
+            String base;
+            InputStream in;
+            if (fileName.startsWith("http://") || fileName.startsWith("https://") || fileName.startsWith("file:")) {
+                base = fileName;
+                in = new URL(fileName).openStream();
+            } else {
+                File file = new File(fileName);
+                base = file.toURI().toString();
+                in = new FileInputStream(file);
+            }
+            try {
+                if (fileName.toLowerCase().endsWith(".nt")) {
+                    readNTriples(in, triples);
+                } else {
+                    readRDFXML(in, base, triples);
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException | SAXException | ParserConfigurationException e) {
+            throw new ContextLoaderException(e.getClass().getSimpleName() + ": " + e.getMessage(), e);
+        }
+
+        if (log.isInfoEnabled()) {
+            log.info("Read triples: " + triples.count + " in " + (System.currentTimeMillis() - start) + " ms");
+        }
+
+        triples.hierarchy.build(result, multipleParents);
+        createIds(result);
+        return result;
+    }
+
+    /**
+     * Keeps the triples describing the concepts and their hierarchy.
+     */
+    private class Triples {
+
+        private final ConceptHierarchy hierarchy = new ConceptHierarchy();
+
+        // rank of the label of each concept
+        private byte[] ranks = new byte[1024];
+
+        private long count;
+
+        public void resource(String subject, String predicate, String object) {
+            count++;
+            switch (predicate) {
+                case RDF_TYPE: {
+                    if (SKOS_CONCEPT.equals(object)) {
+                        hierarchy.addConcept(subject);
+                    }
+                    break;
+                }
+                case SKOS_BROADER: {
+                    hierarchy.addConcept(subject);
+                    hierarchy.addConcept(object);
+                    hierarchy.addBroader(subject, object);
+                    break;
+                }
+                case SKOS_NARROWER: {
+                    hierarchy.addConcept(subject);
+                    hierarchy.addConcept(object);
+                    hierarchy.addBroader(object, subject);
+                    break;
+                }
+                default:
+            }
+        }
+
+        public void literal(String subject, String predicate, String value, String language) {
+            count++;
+            byte rank;
+            if (SKOS_PREF_LABEL.equals(predicate)) {
+                rank = PREF_LABEL;
+            } else if (SKOS_ALT_LABEL.equals(predicate)) {
+                rank = ALT_LABEL;
+            } else {
+                return;
+            }
+            if (!preferredLanguage.isEmpty() && !preferredLanguage.equals(language)) {
+                return;
+            }
+            int concept = hierarchy.getConcept(subject);
+            if (ranks.length <= concept) {
+                ranks = Arrays.copyOf(ranks, Math.max(2 * ranks.length, concept + 1));
+            }
+            if (ranks[concept] < rank) {
+                ranks[concept] = rank;
+                hierarchy.setLabel(concept, value);
+            }
+        }
+    }
+
+    private static void readNTriples(InputStream in, Triples triples) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 65536);
+        NTriplesParser parser = new NTriplesParser();
+        String line;
+        int lineNumber = 0;
+        while (null != (line = reader.readLine())) {
+            lineNumber++;
+            try {
+                parser.parse(line, triples);
+            } catch (IllegalArgumentException e) {
+                if (log.isWarnEnabled()) {
+                    log.warn("Skipping line " + lineNumber + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses N-Triples lines.
+     */
+    private static class NTriplesParser {
+
+        private final StringBuilder buffer = new StringBuilder();
+        private String line;
+        private int position;
+
+        // language of the last literal
+        private String language;
+
+        public void parse(String line, Triples triples) {
+            this.line = line;
+            this.position = 0;
+            skipSpaces();
+            if (position == line.length() || '#' == line.charAt(position)) {
+                return;
+            }
+            String subject = resource();
+            skipSpaces();
+            String predicate = resource();
+            skipSpaces();
+            if (position < line.length() && '"' == line.charAt(position)) {
+                String value = literal();
+                triples.literal(subject, predicate, value, language);
+            } else {
+                triples.resource(subject, predicate, resource());
+            }
+        }
+
+        private String resource() {
+            if (line.startsWith("_:", position)) {
+                int start = position;
+                while (position < line.length() && !Character.isWhitespace(line.charAt(position))) {
+                    position++;
+                }
+                return line.substring(start, position);
+            }
+            if (position == line.length() || '<' != line.charAt(position)) {
+                throw new IllegalArgumentException("IRI expected at position " + position);
+            }
+            position++;
+            int end = line.indexOf('>', position);
+            if (-1 == end) {
+                throw new IllegalArgumentException("Unterminated IRI at position " + position);
+            }
+            String result = line.substring(position, end);
+            position = end + 1;
+            return -1 == result.indexOf('\\') ? result : unescape(result);
+        }
+
+        private String literal() {
+            // skip the opening quote
+            position++;
+            int start = position;
+            boolean escaped = false;
+            while (position < line.length() && '"' != line.charAt(position)) {
+                if ('\\' == line.charAt(position)) {
+                    escaped = true;
+                    position++;
+                }
+                position++;
+            }
+            if (position >= line.length()) {
+                throw new IllegalArgumentException("Unterminated literal at position " + start);
+            }
+            String result = line.substring(start, position);
+            position++;
+            language = null;
+            if (position < line.length() && '@' == line.charAt(position)) {
+                int languageStart = ++position;
+                while (position < line.length() && !Character.isWhitespace(line.charAt(position)) && '.' != line.charAt(position)) {
+                    position++;
+                }
+                language = line.substring(languageStart, position);
+            } else if (line.startsWith("^^", position)) {
+                position += 2;
+                resource();
+            }
+            return escaped ? unescape(result) : result;
+        }
+
+        private String unescape(String s) {
+            buffer.setLength(0);
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if ('\\' != c || i + 1 == s.length()) {
+                    buffer.append(c);
+                    continue;
+                }
+                c = s.charAt(++i);
+                switch (c) {
+                    case 't':
+                        buffer.append('\t');
+                        break;
+                    case 'b':
+                        buffer.append('\b');
+                        break;
+                    case 'n':
+                        buffer.append('\n');
+                        break;
+                    case 'r':
+                        buffer.append('\r');
+                        break;
+                    case 'f':
+                        buffer.append('\f');
+                        break;
+                    case 'u':
+                    case 'U': {
+                        int length = 'u' == c ? 4 : 8;
+                        if (s.length() < i + 1 + length) {
+                            throw new IllegalArgumentException("Incomplete escape: " + s.substring(i - 1));
+                        }
+                        buffer.appendCodePoint(Integer.parseInt(s.substring(i + 1, i + 1 + length), 16));
+                        i += length;
+                        break;
+                    }
+                    default:
+                        buffer.append(c);
+                }
+            }
+            return buffer.toString();
+        }
+
+        private void skipSpaces() {
+            while (position < line.length() && Character.isWhitespace(line.charAt(position))) {
+                position++;
+            }
+        }
+    }
+
+    private static void readRDFXML(InputStream in, String base, Triples triples) throws IOException, SAXException, ParserConfigurationException {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        // the internal entities, common in RDF/XML, are expanded, but no external files or URLs are read
+        factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+        factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+        factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        InputSource source = new InputSource(in);
+        source.setSystemId(base);
+        factory.newSAXParser().parse(source, new RDFXMLHandler(base, triples));
+    }
+
+    /**
+     * Turns RDF/XML into triples. The elements alternate between nodes and their properties.
+     */
+    private static class RDFXMLHandler extends DefaultHandler {
+
+        private enum Kind {
+            RDF, NODE, PROPERTY
+        }
+
+        private static class Frame {
+            private Kind kind;
+            private String subject;
+            private String predicate;
+            private String language;
+            private String base;
+            // whether the property has the object already, as a resource or a node
+            private boolean hasObject;
+            private StringBuilder text;
+        }
+
+        private final Triples triples;
+        private final Deque<Frame> frames = new ArrayDeque<>();
+        private final String documentBase;
+        // depth of the skipped content
+        private int skipped;
+        private long blankNodes;
+
+        public RDFXMLHandler(String base, Triples triples) {
+            this.documentBase = base;
+            this.triples = triples;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if (0 < skipped) {
+                skipped++;
+                return;
+            }
+            Frame parent = frames.peek();
+            Frame frame = new Frame();
+            String language = attributes.getValue(XML, "lang");
+            frame.language = null != language ? language : null == parent ? null : parent.language;
+            String base = attributes.getValue(XML, "base");
+            frame.base = null != base ? base : null == parent ? documentBase : parent.base;
+            String element = uri + localName;
+
+            if (null == parent && (RDF + "RDF").equals(element)) {
+                frame.kind = Kind.RDF;
+            } else if (null == parent || Kind.NODE != parent.kind) {
+                frame.kind = Kind.NODE;
+                frame.subject = subject(attributes, frame.base);
+                if (null != parent && Kind.PROPERTY == parent.kind) {
+                    // a node as the object of a property
+                    parent.hasObject = true;
+                    triples.resource(parent.subject, parent.predicate, frame.subject);
+                }
+                if (!(RDF + "Description").equals(element)) {
+                    triples.resource(frame.subject, RDF_TYPE, element);
+                }
+                propertyAttributes(frame.subject, attributes, frame.language, frame.base);
+            } else {
+                frame.kind = Kind.PROPERTY;
+                frame.subject = parent.subject;
+                frame.predicate = element;
+                String parseType = attributes.getValue(RDF, "parseType");
+                String resource = attributes.getValue(RDF, "resource");
+                String nodeID = attributes.getValue(RDF, "nodeID");
+                if ("Resource".equals(parseType)) {
+                    // the properties of a blank node follow
+                    String object = blankNode();
+                    triples.resource(frame.subject, element, object);
+                    frame.kind = Kind.NODE;
+                    frame.subject = object;
+                } else if (null != parseType) {
+                    skipped = 1;
+                    return;
+                } else if (null != resource || null != nodeID) {
+                    String object = null != resource ? resolve(frame.base, resource) : "_:" + nodeID;
+                    triples.resource(frame.subject, element, object);
+                    frame.hasObject = true;
+                    propertyAttributes(object, attributes, frame.language, frame.base);
+                } else {
+                    frame.text = new StringBuilder();
+                }
+            }
+            frames.push(frame);
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (0 < skipped) {
+                return;
+            }
+            Frame frame = frames.peek();
+            if (null != frame && Kind.PROPERTY == frame.kind && !frame.hasObject) {
+                frame.text.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if (0 < skipped) {
+                skipped--;
+                return;
+            }
+            Frame frame = frames.pop();
+            if (Kind.PROPERTY == frame.kind && !frame.hasObject) {
+                triples.literal(frame.subject, frame.predicate, frame.text.toString(), frame.language);
+            }
+        }
+
+        private String subject(Attributes attributes, String base) {
+            String about = attributes.getValue(RDF, "about");
+            if (null != about) {
+                return resolve(base, about);
+            }
+            String id = attributes.getValue(RDF, "ID");
+            if (null != id) {
+                return resolve(base, "#" + id);
+            }
+            String nodeID = attributes.getValue(RDF, "nodeID");
+            if (null != nodeID) {
+                return "_:" + nodeID;
+            }
+            return blankNode();
+        }
+
+        /**
+         * Turns the attributes which are not RDF or XML syntax into literal properties of the subject.
+         */
+        private void propertyAttributes(String subject, Attributes attributes, String language, String base) {
+            for (int i = 0; i < attributes.getLength(); i++) {
+                String uri = attributes.getURI(i);
+                if (uri.isEmpty() || XML.equals(uri) || uri.startsWith("http://www.w3.org/2000/xmlns")) {
+                    continue;
+                }
+                String predicate = uri + attributes.getLocalName(i);
+                if (RDF_TYPE.equals(predicate)) {
+                    triples.resource(subject, RDF_TYPE, resolve(base, attributes.getValue(i)));
+                } else if (!RDF.equals(uri)) {
+                    triples.literal(subject, predicate, attributes.getValue(i), language);
+                }
+            }
+        }
+
+        private String blankNode() {
+            // not a valid rdf:nodeID, so it cannot clash with the named ones
+            return "_:#" + blankNodes++;
+        }
+
+        private static String resolve(String base, String reference) {
+            if (null == base || reference.startsWith("http://") || reference.startsWith("https://")) {
+                return reference;
+            }
+            try {
+                return new URI(base).resolve(new URI(reference)).toString();
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                return reference;
+            }
+        }
+    }
+
+    public String getDescription() {
+        return ILoader.SKOS_FILES;
+    }
+
+    public ILoader.LoaderType getType() {
+        return ILoader.LoaderType.FILE;
+    }
+}
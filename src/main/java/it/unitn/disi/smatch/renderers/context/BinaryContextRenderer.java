@@ -0,0 +1,187 @@
+package it.unitn.disi.smatch.renderers.context;
+
+import it.unitn.disi.smatch.data.ling.IAtomicConceptOfLabel;
+import it.unitn.disi.smatch.data.ling.ISense;
+import it.unitn.disi.smatch.data.trees.IContext;
+import it.unitn.disi.smatch.data.trees.INode;
+import it.unitn.disi.smatch.data.trees.INodeData;
+import it.unitn.disi.smatch.loaders.context.BinaryContextLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders a context into the compact binary format read by {@link BinaryContextLoader}.
+ * See the loader for the file layout.
+ *
+ * @author agent
+ */
+public class BinaryContextRenderer implements IContextRenderer {
+
+    private static final Logger log = LoggerFactory.getLogger(BinaryContextRenderer.class);
+
+    /**
+     * Growable int array.
+     */
+    private static class IntList {
+        private int[] data = new int[1024];
+        private int size;
+
+        void add(int value) {
+            if (size == data.length) {
+                int[] newData = new int[2 * data.length];
+                System.arraycopy(data, 0, newData, 0, size);
+                data = newData;
+            }
+            data[size++] = value;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            for (int i = 0; i < size; i++) {
+                out.writeInt(data[i]);
+            }
+        }
+    }
+
+    /**
+     * Deduplicating string table.
+     */
+    private static class StringTable {
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final IntList starts = new IntList();
+        private final ByteArrayOutputStream blob = new ByteArrayOutputStream();
+
+        StringTable() {
+            starts.add(0);
+        }
+
+        int add(String string) {
+            if (null == string) {
+                return BinaryContextLoader.NULL_STRING;
+            }
+            Integer result = indexes.get(string);
+            if (null == result) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                blob.write(bytes, 0, bytes.length);
+                starts.add(blob.size());
+                result = indexes.size();
+                indexes.put(string, result);
+            }
+            return result;
+        }
+    }
+
+    public void render(IContext context, String fileName) throws ContextRendererException {
+        StringTable strings = new StringTable();
+        IntList parent = new IntList();
+        IntList id = new IntList();
+        IntList name = new IntList();
+        IntList labelFormula = new IntList();
+        IntList nodeFormula = new IntList();
+        IntList provenance = new IntList();
+        IntList flags = new IntList();
+        IntList conceptStart = new IntList();
+        IntList conceptId = new IntList();
+        IntList token = new IntList();
+        IntList lemma = new IntList();
+        IntList senseStart = new IntList();
+        IntList sense = new IntList();
+
+        // nodes in preorder, so that parents always precede their children
+        Map<INode, Integer> indexes = new IdentityHashMap<>();
+        Deque<INode> stack = new ArrayDeque<>();
+        stack.push(context.getRoot());
+        int nodeCount = 0;
+        int conceptCount = 0;
+        int senseCount = 0;
+        while (!stack.isEmpty()) {
+            INode node = stack.pop();
+            indexes.put(node, nodeCount);
+            nodeCount++;
+
+            INodeData nd = node.nodeData();
+            parent.add(node.hasParent() ? indexes.get(node.getParent()) : -1);
+            id.add(strings.add(nd.getId()));
+            name.add(strings.add(nd.getName()));
+            labelFormula.add(strings.add(nd.getLabelFormula()));
+            nodeFormula.add(strings.add(nd.getNodeFormula()));
+            provenance.add(strings.add(nd.getProvenance()));
+            flags.add(nd.getIsPreprocessed() ? BinaryContextLoader.FLAG_PREPROCESSED : 0);
+
+            conceptStart.add(conceptCount);
+            List<IAtomicConceptOfLabel> concepts = nd.getConcepts();
+            if (null != concepts) {
+                for (IAtomicConceptOfLabel acol : concepts) {
+                    conceptId.add(acol.getId());
+                    token.add(strings.add(acol.getToken()));
+                    lemma.add(strings.add(acol.getLemma()));
+                    senseStart.add(senseCount);
+                    conceptCount++;
+                    List<ISense> senses = acol.getSenses();
+                    if (null != senses) {
+                        for (ISense s : senses) {
+                            sense.add(strings.add(s.getId()));
+                            senseCount++;
+                        }
+                    }
+                }
+            }
+
+            List<INode> children = new ArrayList<>(node.getChildren());
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(children.get(i));
+            }
+        }
+        conceptStart.add(conceptCount);
+        senseStart.add(senseCount);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), 65536))) {
+            out.writeInt(BinaryContextLoader.MAGIC);
+            out.writeInt(BinaryContextLoader.VERSION);
+            out.writeInt(nodeCount);
+            out.writeInt(conceptCount);
+            out.writeInt(senseCount);
+            out.writeInt(strings.indexes.size());
+            out.writeInt(strings.blob.size());
+
+            parent.write(out);
+            id.write(out);
+            name.write(out);
+            labelFormula.write(out);
+            nodeFormula.write(out);
+            provenance.write(out);
+            flags.write(out);
+            conceptStart.write(out);
+            conceptId.write(out);
+            token.write(out);
+            lemma.write(out);
+            senseStart.write(out);
+            sense.write(out);
+            strings.starts.write(out);
+            strings.blob.writeTo(out);
+        } catch (IOException e) {
+            throw new ContextRendererException(e.getClass().getSimpleName() + ": " + e.getMessage(), e);
+        }
+
+        if (log.isInfoEnabled()) {
+            log.info("Rendered nodes: " + nodeCount + ", concepts: " + conceptCount + ", strings: " + strings.indexes.size());
+        }
+    }
+
+    public String getDescription() {
+        return BinaryContextLoader.BINARY_FILES;
+    }
+}
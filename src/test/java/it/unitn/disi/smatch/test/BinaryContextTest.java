@@ -0,0 +1,176 @@
+package it.unitn.disi.smatch.test;
+
+import it.unitn.disi.smatch.data.ling.IAtomicConceptOfLabel;
+import it.unitn.disi.smatch.data.trees.Context;
+import it.unitn.disi.smatch.data.trees.IContext;
+import it.unitn.disi.smatch.data.trees.INode;
+import it.unitn.disi.smatch.data.trees.INodeData;
+import it.unitn.disi.smatch.loaders.context.BinaryContextLoader;
+import it.unitn.disi.smatch.loaders.context.ContextLoaderException;
+import it.unitn.disi.smatch.renderers.context.BinaryContextRenderer;
+import it.unitn.disi.smatch.renderers.context.ContextRendererException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the binary context renderer and loader restore the contexts they write and reject broken files.
+ *
+ * @author agent
+ */
+public class BinaryContextTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws IOException, ContextRendererException, ContextLoaderException {
+        IContext context = createContext();
+        File file = folder.newFile("context.smc");
+        new BinaryContextRenderer().render(context, file.getPath());
+
+        assertSameContext(context, new BinaryContextLoader().loadContext(file.getPath()));
+    }
+
+    @Test
+    public void testTruncated() throws IOException, ContextRendererException {
+        File file = folder.newFile("context.smc");
+        new BinaryContextRenderer().render(createContext(), file.getPath());
+
+        long length = file.length();
+        for (long l = length - 1; 0 <= l; l--) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(l);
+            }
+            assertRejected(file);
+        }
+    }
+
+    @Test
+    public void testCorrupt() throws IOException, ContextRendererException {
+        File file = folder.newFile("context.smc");
+        new BinaryContextRenderer().render(createContext(), file.getPath());
+        long length = file.length();
+
+        // magic
+        overwrite(file, 0, 0);
+        assertRejected(file);
+
+        // node count
+        new BinaryContextRenderer().render(createContext(), file.getPath());
+        overwrite(file, 8, 1000);
+        assertRejected(file);
+
+        // parent of the second node refers to itself
+        new BinaryContextRenderer().render(createContext(), file.getPath());
+        overwrite(file, 28 + 4, 1);
+        assertRejected(file);
+
+        // name of the root refers past the string table
+        new BinaryContextRenderer().render(createContext(), file.getPath());
+        overwrite(file, 28 + 2 * 4 * NODES, 100000);
+        assertRejected(file);
+
+        assertEquals(length, file.length());
+    }
+
+    private static final int NODES = 5;
+
+    private static IContext createContext() {
+        IContext context = new Context();
+        INode root = context.createRoot("Top");
+        root.nodeData().setId("n0");
+        root.nodeData().setProvenance("http://example.org/top");
+        INode a = root.createChild("Europe");
+        a.nodeData().setId("n1");
+        a.nodeData().setLabelFormula("1");
+        a.nodeData().setNodeFormula("n1.1");
+        a.nodeData().setIsPreprocessed(true);
+        addConcept(a.nodeData(), 1, "europe", "europe");
+        INode b = a.createChild("Italian cities");
+        b.nodeData().setId("n2");
+        b.nodeData().setLabelFormula("1 & 2");
+        b.nodeData().setNodeFormula("n1.1 & n2.1 & n2.2");
+        b.nodeData().setIsPreprocessed(true);
+        addConcept(b.nodeData(), 1, "italian", "italian");
+        addConcept(b.nodeData(), 2, "cities", "city");
+        INode c = root.createChild("");
+        c.nodeData().setId("n3");
+        // shares the strings with the other nodes
+        INode d = c.createChild("Europe");
+        d.nodeData().setId("n4");
+        d.nodeData().setProvenance("http://example.org/top");
+        return context;
+    }
+
+    private static void addConcept(INodeData nd, int id, String token, String lemma) {
+        IAtomicConceptOfLabel acol = nd.createConcept();
+        acol.setId(id);
+        acol.setToken(token);
+        acol.setLemma(lemma);
+        nd.addConcept(acol);
+    }
+
+    private static void assertSameContext(IContext expected, IContext actual) {
+        assertEquals(expected.nodesCount(), actual.nodesCount());
+        Iterator<INode> e = expected.nodeIterator();
+        Iterator<INode> a = actual.nodeIterator();
+        while (e.hasNext()) {
+            INodeData en = e.next().nodeData();
+            INode an = a.next();
+            assertEquals(en.getName(), an.nodeData().getName());
+            assertEquals(en.getId(), an.nodeData().getId());
+            assertEquals(en.getLabelFormula(), an.nodeData().getLabelFormula());
+            assertEquals(en.getNodeFormula(), an.nodeData().getNodeFormula());
+            assertEquals(en.getProvenance(), an.nodeData().getProvenance());
+            assertEquals(en.getIsPreprocessed(), an.nodeData().getIsPreprocessed());
+
+            List<IAtomicConceptOfLabel> ec = en.getConcepts();
+            List<IAtomicConceptOfLabel> ac = an.nodeData().getConcepts();
+            assertEquals(ec.size(), ac.size());
+            for (int i = 0; i < ec.size(); i++) {
+                assertEquals(ec.get(i).getId(), ac.get(i).getId());
+                assertEquals(ec.get(i).getToken(), ac.get(i).getToken());
+                assertEquals(ec.get(i).getLemma(), ac.get(i).getLemma());
+            }
+        }
+        assertFalse(a.hasNext());
+
+        // structure
+        assertSameChildren(expected.getRoot(), actual.getRoot());
+    }
+
+    private static void assertSameChildren(INode expected, INode actual) {
+        assertEquals(expected.nodeData().getId(), actual.nodeData().getId());
+        assertEquals(expected.getChildCount(), actual.getChildCount());
+        for (int i = 0; i < expected.getChildCount(); i++) {
+            assertSameChildren(expected.getChildAt(i), actual.getChildAt(i));
+        }
+    }
+
+    private static void overwrite(File file, long position, int value) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(position);
+            raf.writeInt(value);
+        }
+    }
+
+    private static void assertRejected(File file) {
+        try {
+            new BinaryContextLoader().loadContext(file.getPath());
+            fail("Loaded a broken file of " + file.length() + " bytes");
+        } catch (ContextLoaderException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package it.unitn.disi.smatch.test;
+
+import it.unitn.disi.smatch.CLI;
+import it.unitn.disi.smatch.IMatchManager;
+import it.unitn.disi.smatch.SMatchException;
+import it.unitn.disi.smatch.classifiers.CNFContextClassifierOrbital;
+import it.unitn.disi.smatch.classifiers.ContextClassifierException;
+import it.unitn.disi.smatch.data.trees.Context;
+import it.unitn.disi.smatch.data.trees.IContext;
+import it.unitn.disi.smatch.data.trees.INode;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the CNF cache, the per-thread Orbital logic and the parallel classification of
+ * {@link CNFContextClassifierOrbital} do not change the concept at node formulas.
+ *
+ * @author agent
+ */
+public class CNFContextClassifierOrbitalTest {
+
+    private static final String[] FORMULAS = {
+            "n0.1",
+            "n1.1 & (n1.2 | n1.3)",
+            "~n2.1",
+            "n3.1 & ~n3.2",
+            "(n4.1 | n4.2) & (n4.3 | ~n4.1)",
+            "~(n5.1 & n5.2) | n5.3",
+            "n1.1 & (n1.2 | n1.3) ",
+    };
+
+    @Test
+    public void testCacheAcrossContexts() throws ContextClassifierException {
+        CNFContextClassifierOrbital classifier = new CNFContextClassifierOrbital();
+        // the same label formulas in other places of the tree
+        IContext first = createContext(0);
+        IContext second = createContext(3);
+        classifier.classify(first);
+        long hits = classifier.getCacheHits();
+        classifier.classify(second);
+        assertTrue(hits < classifier.getCacheHits());
+
+        IContext expectedFirst = createContext(0);
+        new CNFContextClassifierOrbital().classify(expectedFirst);
+        IContext expectedSecond = createContext(3);
+        new CNFContextClassifierOrbital().classify(expectedSecond);
+
+        assertSameNodeFormulas(expectedFirst, first);
+        assertSameNodeFormulas(expectedSecond, second);
+    }
+
+    @Test
+    public void testConversionOnSeveralThreads() throws ContextClassifierException, InterruptedException, ExecutionException {
+        final List<String> expected = new ArrayList<>();
+        for (String formula : FORMULAS) {
+            expected.add(CNFContextClassifierOrbital.toCNF(null, formula));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<String>>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                results.add(executor.submit(new Callable<List<String>>() {
+                    @Override
+                    public List<String> call() throws ContextClassifierException {
+                        List<String> result = new ArrayList<>();
+                        // each thread converts the formulas several times with its own logic instance
+                        for (int round = 0; round < 10; round++) {
+                            result.clear();
+                            for (String formula : FORMULAS) {
+                                result.add(CNFContextClassifierOrbital.toCNF(null, formula));
+                            }
+                        }
+                        return result;
+                    }
+                }));
+            }
+            for (Future<List<String>> result : results) {
+                assertEquals(expected, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testParallelSameAsSequential() throws SMatchException {
+        IMatchManager mm = CLI.createMatchManager(null);
+        for (String fileName : new String[]{
+                "src/main/resources/test-data/cw/c.xml",
+                "src/main/resources/test-data/cw/w.xml"}) {
+            IContext sequential = (IContext) mm.loadContext(fileName);
+            mm.offline(sequential);
+            IContext parallel = (IContext) mm.loadContext(fileName);
+            mm.offline(parallel);
+
+            new CNFContextClassifierOrbital(1).classify(sequential);
+            new CNFContextClassifierOrbital(4).classify(parallel);
+
+            assertSameNodeFormulas(sequential, parallel);
+        }
+    }
+
+    /**
+     * Creates a tree of label formulas, rotated by the shift, so that contexts created with different shifts share
+     * formulas at different nodes.
+     */
+    private static IContext createContext(int shift) {
+        IContext context = new Context();
+        INode root = context.createRoot("Top");
+        root.nodeData().setLabelFormula(formula(shift));
+        INode parent = root;
+        for (int i = 1; i < FORMULAS.length; i++) {
+            INode node = parent.createChild("node " + i);
+            node.nodeData().setLabelFormula(formula(shift + i));
+            INode leaf = parent.createChild("leaf " + i);
+            leaf.nodeData().setLabelFormula(formula(shift + 2 * i));
+            parent = node;
+        }
+        return context;
+    }
+
+    private static String formula(int i) {
+        return FORMULAS[i % FORMULAS.length];
+    }
+
+    private static void assertSameNodeFormulas(IContext expected, IContext actual) {
+        assertEquals(expected.nodesCount(), actual.nodesCount());
+        Iterator<INode> e = expected.nodeIterator();
+        Iterator<INode> a = actual.nodeIterator();
+        while (e.hasNext()) {
+            assertEquals(e.next().nodeData().getNodeFormula(), a.next().nodeData().getNodeFormula());
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package it.unitn.disi.smatch.test;
+
+import it.unitn.disi.common.DISIException;
+import it.unitn.disi.smatch.CLI;
+import it.unitn.disi.smatch.IMatchManager;
+import it.unitn.disi.smatch.classifiers.CNFContextClassifierNative;
+import it.unitn.disi.smatch.classifiers.CNFContextClassifierOrbital;
+import it.unitn.disi.smatch.classifiers.CNFConverter;
+import it.unitn.disi.smatch.data.trees.IContext;
+import it.unitn.disi.smatch.data.trees.INode;
+import org.apache.log4j.Logger;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link CNFConverter} produces formulas equivalent to the Orbital based conversion,
+ * that the native classifier gives the same formulas in parallel and compares their speed on the bundled test data.
+ *
+ * @author agent
+ */
+public class CNFConverterTest {
+
+    public static final Logger log = Logger.getLogger(CNFConverterTest.class);
+
+    private static final String[] ATOMS = {"n1.1", "n1.2", "n2.3", "n4.10", "n5.7"};
+
+    @Test
+    public void testEquivalenceRandom() throws DISIException {
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            String formula = generate(random, 3);
+            assertEquivalent(formula, CNFConverter.toCNF(formula), CNFContextClassifierOrbital.toCNF(null, formula));
+        }
+    }
+
+    @Test
+    public void testBenchmark() throws DISIException {
+        IMatchManager mm = CLI.createMatchManager(null);
+        List<String> formulas = new ArrayList<>();
+        for (String fileName : new String[]{
+                "src/main/resources/test-data/cw/c.xml",
+                "src/main/resources/test-data/cw/w.xml",
+                "src/main/resources/test-data/spsm/source.xml",
+                "src/main/resources/test-data/spsm/target.xml"}) {
+            IContext context = (IContext) mm.loadContext(fileName);
+            mm.offline(context);
+            for (Iterator<INode> i = context.nodeIterator(); i.hasNext(); ) {
+                String formula = i.next().nodeData().getLabelFormula();
+                if (null != formula && !formula.trim().isEmpty()) {
+                    formulas.add(formula);
+                }
+            }
+        }
+
+        // warm up both converters, so that neither pays for class loading and compilation of the other
+        List<String> orbital = convertOrbital(formulas);
+        List<String> nativeCNF = convertNative(formulas);
+
+        // the static Orbital conversion is not cached, both converters do the same work
+        long start = System.nanoTime();
+        orbital = convertOrbital(formulas);
+        long orbitalTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        nativeCNF = convertNative(formulas);
+        long nativeTime = System.nanoTime() - start;
+
+        for (int i = 0; i < formulas.size(); i++) {
+            assertEquivalent(formulas.get(i), nativeCNF.get(i), orbital.get(i));
+        }
+
+        log.info("Label formulas: " + formulas.size());
+        log.info("Orbital: " + orbitalTime / 1000 + " us");
+        log.info("Native: " + nativeTime / 1000 + " us");
+    }
+
+    @Test
+    public void testNativeParallelSameAsSequential() throws DISIException {
+        IMatchManager mm = CLI.createMatchManager(null);
+        for (String fileName : new String[]{
+                "src/main/resources/test-data/cw/c.xml",
+                "src/main/resources/test-data/cw/w.xml"}) {
+            IContext sequential = (IContext) mm.loadContext(fileName);
+            mm.offline(sequential);
+            IContext parallel = (IContext) mm.loadContext(fileName);
+            mm.offline(parallel);
+
+            new CNFContextClassifierNative(1).classify(sequential);
+            new CNFContextClassifierNative(4).classify(parallel);
+
+            assertEquals(sequential.nodesCount(), parallel.nodesCount());
+            Iterator<INode> s = sequential.nodeIterator();
+            Iterator<INode> p = parallel.nodeIterator();
+            while (s.hasNext()) {
+                assertEquals(s.next().nodeData().getNodeFormula(), p.next().nodeData().getNodeFormula());
+            }
+        }
+    }
+
+    private static List<String> convertOrbital(List<String> formulas) throws DISIException {
+        List<String> result = new ArrayList<>(formulas.size());
+        for (String formula : formulas) {
+            result.add(CNFContextClassifierOrbital.toCNF(null, formula));
+        }
+        return result;
+    }
+
+    private static List<String> convertNative(List<String> formulas) throws DISIException {
+        List<String> result = new ArrayList<>(formulas.size());
+        for (String formula : formulas) {
+            result.add(CNFContextClassifierNative.toCNF(null, formula));
+        }
+        return result;
+    }
+
+    private static void assertEquivalent(String formula, String first, String second) {
+        Set<String> atoms = new LinkedHashSet<>();
+        collectAtoms(first, atoms);
+        collectAtoms(second, atoms);
+        List<String> atomList = new ArrayList<>(atoms);
+        // formulas with more atoms are checked on a sample of assignments
+        int rows = atomList.size() < 16 ? 1 << atomList.size() : 1 << 16;
+        Random random = new Random(atomList.size());
+        for (int row = 0; row < rows; row++) {
+            Set<String> trueAtoms = new LinkedHashSet<>();
+            for (int i = 0; i < atomList.size(); i++) {
+                boolean value = atomList.size() < 16 ? 0 != ((row >>> i) & 1) : random.nextBoolean();
+                if (value) {
+                    trueAtoms.add(atomList.get(i));
+                }
+            }
+            assertTrue(formula + " -> " + first + " vs " + second, evaluate(first, trueAtoms) == evaluate(second, trueAtoms));
+        }
+    }
+
+    private static void collectAtoms(String cnf, Set<String> atoms) {
+        for (String token : cnf.split("[\\s&|~()]+")) {
+            if (!token.isEmpty() && !"true".equals(token) && !"false".equals(token)) {
+                atoms.add(token);
+            }
+        }
+    }
+
+    private static boolean evaluate(String cnf, Set<String> trueAtoms) {
+        String formula = cnf.trim();
+        if (formula.isEmpty() || "true".equals(formula)) {
+            return true;
+        }
+        if ("false".equals(formula)) {
+            return false;
+        }
+        for (String clause : formula.split("&")) {
+            boolean satisfied = false;
+            for (String literal : clause.replace("(", "").replace(")", "").split("\\|")) {
+                literal = literal.trim();
+                boolean negated = literal.startsWith("~");
+                String atom = negated ? literal.substring(1).trim() : literal;
+                satisfied = satisfied || (trueAtoms.contains(atom) != negated);
+            }
+            if (!satisfied) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String generate(Random random, int depth) {
+        if (0 == depth || 0 == random.nextInt(3)) {
+            return (0 == random.nextInt(4) ? "~" : "") + ATOMS[random.nextInt(ATOMS.length)];
+        }
+        switch (random.nextInt(3)) {
+            case 0:
+                return "~(" + generate(random, depth - 1) + ")";
+            case 1:
+                return "(" + generate(random, depth - 1) + " & " + generate(random, depth - 1) + ")";
+            default:
+                return "(" + generate(random, depth - 1) + " | " + generate(random, depth - 1) + ")";
+        }
+    }
+}
@@ -2,11 +2,13 @@ package it.unitn.disi.smatch.test;
 
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.UUID;
 
 import org.apache.log4j.Logger;
@@ -16,6 +18,7 @@ import org.junit.rules.TemporaryFolder;
 
 import it.unitn.disi.common.DISIException;
 import it.unitn.disi.smatch.CLI;
+import it.unitn.disi.smatch.CLIServer;
 
 
 /**
@@ -25,6 +28,9 @@ import it.unitn.disi.smatch.CLI;
 public class CliTest {
 
     public static final Logger log = Logger.getLogger(CliTest.class);
+
+    // how long to wait for the server to execute a command, ms
+    private static final int REPLY_TIMEOUT = 120000;
     
     @Rule
     public TemporaryFolder folder = new TemporaryFolder();
@@ -64,6 +70,63 @@ public class CliTest {
         assertFalse(output.exists());                
     }
     
+    @Test
+    public void testBatch() throws ClassNotFoundException, IOException, DISIException {
+
+        String c = new File("src/main/resources/test-data/cw/c.xml").getAbsolutePath();
+        String w = new File("src/main/resources/test-data/cw/w.xml").getAbsolutePath();
+        File manifest = folder.newFile("manifest.txt");
+        try (PrintWriter out = new PrintWriter(manifest, "UTF-8")) {
+            out.println("# source\ttarget\toutput");
+            out.println(c + "\t" + w + "\tc-w.txt");
+            out.println(w + "\t" + c + "\tw-c.txt");
+        }
+
+        CLI.main(new String[]{
+                CLI.CMD_BATCH,
+                manifest.getAbsolutePath(),
+                "2"
+        });
+        assertTrue(new File(folder.getRoot(), "c-w.txt").exists());
+        assertTrue(new File(folder.getRoot(), "w-c.txt").exists());
+    }
+
+    @Test
+    public void testServe() throws Exception {
+
+        final CLIServer server = new CLIServer(CLI.createMatchManager(null), null, null, 0);
+        // bound before the client connects, so that no retries are needed
+        final int port = server.bind();
+        Thread serverThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    server.serve();
+                } catch (Exception e) {
+                    log.error("Server failed", e);
+                }
+            }
+        });
+        // a failed assert must not leave the JVM waiting for the server
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        File output = new File(folder.getRoot(), UUID.randomUUID().toString());
+        String[] job = new String[]{
+                CLI.CMD_ALL_STEPS,
+                new File("src/main/resources/test-data/cw/c.xml").getAbsolutePath(),
+                new File("src/main/resources/test-data/cw/w.xml").getAbsolutePath(),
+                output.getAbsolutePath()
+        };
+
+        assertEquals(CLIServer.REPLY_OK, CLIServer.submit(port, job, REPLY_TIMEOUT));
+        assertTrue(output.exists());
+
+        assertEquals(CLIServer.REPLY_OK, CLIServer.submit(port, new String[]{CLIServer.CMD_SHUTDOWN}, REPLY_TIMEOUT));
+        serverThread.join(REPLY_TIMEOUT);
+        assertFalse(serverThread.isAlive());
+    }
+
     /**
      * @since 2.0.0
      */
@@ -0,0 +1,171 @@
+package it.unitn.disi.smatch.test;
+
+import it.unitn.disi.smatch.data.trees.IContext;
+import it.unitn.disi.smatch.data.trees.INode;
+import it.unitn.disi.smatch.loaders.context.ContextLoaderException;
+import it.unitn.disi.smatch.loaders.context.ReferenceNodes;
+import it.unitn.disi.smatch.loaders.context.StreamingSKOSContextLoader;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks how the tree of a thesaurus is built out of its concepts and edges: how the parents are chosen, the cycles
+ * dropped and the reference nodes placed. The thesauri are written as N-Triples, which the streaming loader reads
+ * in order, therefore the edge met first is known.
+ *
+ * @author agent
+ */
+public class ConceptHierarchyTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String NS = "http://example.org/hierarchy#";
+
+    @Test
+    public void testFirstEdgeChoosesParent() throws IOException, ContextLoaderException {
+        String[] triples = {
+                "r label root",
+                "c broader b",
+                "c broader a",
+                "a broader r",
+                "b broader r",
+                "d broader c"};
+
+        IContext context = load(false, triples);
+        assertEquals(NS + "r", context.getRoot().nodeData().getProvenance());
+        assertEquals(NS + "b", find(context, "c").get(0).getParent().nodeData().getProvenance());
+        assertEquals(5, context.nodesCount());
+
+        context = load(true, triples);
+        List<INode> cs = find(context, "c");
+        assertEquals(2, cs.size());
+        Map<INode, INode> references = ReferenceNodes.getReferences(context);
+        assertEquals(1, references.size());
+        INode reference = references.keySet().iterator().next();
+        INode node = references.get(reference);
+        assertEquals(NS + "b", node.getParent().nodeData().getProvenance());
+        assertEquals(NS + "a", reference.getParent().nodeData().getProvenance());
+        assertEquals(0, reference.getChildCount());
+        assertSame(node, find(context, "d").get(0).getParent());
+    }
+
+    @Test
+    public void testCycleRejected() throws IOException, ContextLoaderException {
+        String[] triples = {
+                "a broader r",
+                "b broader a",
+                // closes the cycle r - a - b - r, while r has no parent
+                "r broader b",
+                // closes the cycle a - b - a, while a has a parent
+                "a broader b"};
+
+        for (boolean multipleParents : new boolean[]{false, true}) {
+            IContext context = load(multipleParents, triples);
+            assertEquals(NS + "r", context.getRoot().nodeData().getProvenance());
+            assertEquals(3, context.nodesCount());
+            assertEquals(NS + "a", find(context, "b").get(0).getParent().nodeData().getProvenance());
+        }
+    }
+
+    @Test
+    public void testDuplicateEdges() throws IOException, ContextLoaderException {
+        // the same edges stated as BT and as NT
+        IContext context = load(true,
+                "a broader r",
+                "b broader r",
+                "c broader a",
+                "c broader b",
+                "b narrower c",
+                "a narrower c");
+
+        assertEquals(5, context.nodesCount());
+        List<String> parents = new ArrayList<>();
+        for (INode c : find(context, "c")) {
+            parents.add(c.getParent().nodeData().getProvenance());
+        }
+        Collections.sort(parents);
+        assertEquals(Arrays.asList(NS + "a", NS + "b"), parents);
+    }
+
+    @Test
+    public void testRoots() throws IOException, ContextLoaderException {
+        IContext context = load(false, "a concept");
+        assertEquals(NS + "a", context.getRoot().nodeData().getProvenance());
+
+        context = load(false, "a concept", "b concept");
+        INode root = context.getRoot();
+        assertEquals("Top", root.nodeData().getName());
+        assertEquals(2, root.getChildCount());
+        assertEquals(3, context.nodesCount());
+
+        try {
+            load(false);
+            fail();
+        } catch (ContextLoaderException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testLabels() throws IOException, ContextLoaderException {
+        IContext context = load(false,
+                "b broader a",
+                "a label first",
+                "a label second");
+
+        assertEquals("first", context.getRoot().nodeData().getName());
+        assertEquals("", find(context, "b").get(0).nodeData().getName());
+    }
+
+    /**
+     * Loads a thesaurus given as lines of subject, predicate and object, where the predicate is one of
+     * concept, broader, narrower and label.
+     */
+    private IContext load(boolean multipleParents, String... triples) throws IOException, ContextLoaderException {
+        File file = File.createTempFile("thesaurus", ".nt", folder.getRoot());
+        try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+            for (String triple : triples) {
+                String[] t = triple.split(" ");
+                String subject = "<" + NS + t[0] + ">";
+                switch (t[1]) {
+                    case "concept":
+                        out.println(subject + " <http://www.w3.org/1999/02/22-rdf-syntax-ns#type> <http://www.w3.org/2004/02/skos/core#Concept> .");
+                        break;
+                    case "label":
+                        out.println(subject + " <http://www.w3.org/2004/02/skos/core#prefLabel> \"" + t[2] + "\" .");
+                        break;
+                    default:
+                        out.println(subject + " <http://www.w3.org/2004/02/skos/core#" + t[1] + "> <" + NS + t[2] + "> .");
+                }
+            }
+        }
+        return new StreamingSKOSContextLoader("", multipleParents).loadContext(file.getPath());
+    }
+
+    private static List<INode> find(IContext context, String concept) {
+        List<INode> result = new ArrayList<>();
+        for (Iterator<INode> i = context.nodeIterator(); i.hasNext(); ) {
+            INode node = i.next();
+            if ((NS + concept).equals(node.nodeData().getProvenance())) {
+                result.add(node);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,121 @@
+package it.unitn.disi.smatch.test;
+
+import it.unitn.disi.smatch.data.trees.IContext;
+import it.unitn.disi.smatch.data.trees.INode;
+import it.unitn.disi.smatch.loaders.context.ContextLoaderException;
+import it.unitn.disi.smatch.loaders.context.MultilingualContext;
+import it.unitn.disi.smatch.loaders.context.SKOSContextLoader;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks which label a concept gets in each context of a {@link MultilingualContext}.
+ *
+ * @author agent
+ */
+public class MultilingualContextTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String NS = "http://example.org/labels#";
+
+    @Test
+    public void testPreferredBeforeAlternative() throws IOException, ContextLoaderException {
+        MultilingualContext thesaurus = load(
+                "animal altLabel en beast",
+                "animal prefLabel en animal",
+                "dog altLabel en hound",
+                "dog prefLabel it cane");
+
+        assertEquals("animal", names(thesaurus, "en").get("animal"));
+        assertEquals("hound", names(thesaurus, "en").get("dog"));
+        assertEquals("", names(thesaurus, "it").get("animal"));
+        assertEquals("cane", names(thesaurus, "it").get("dog"));
+    }
+
+    @Test
+    public void testAnyLanguage() throws IOException, ContextLoaderException {
+        MultilingualContext thesaurus = load(
+                "animal altLabel it bestia",
+                "animal prefLabel en animal",
+                "stone altLabel - stone",
+                "hound altLabel en hound");
+
+        Map<String, String> any = names(thesaurus, "");
+        assertEquals("animal", any.get("animal"));
+        assertEquals("stone", any.get("stone"));
+        assertEquals("hound", any.get("hound"));
+        assertEquals(any, names(thesaurus, null));
+        // the labels without language are not in any particular language
+        Map<String, String> en = names(thesaurus, "en");
+        assertEquals("animal", en.get("animal"));
+        assertEquals("", en.get("stone"));
+        assertEquals("hound", en.get("hound"));
+    }
+
+    @Test
+    public void testLanguages() throws IOException, ContextLoaderException {
+        MultilingualContext thesaurus = load(
+                "animal prefLabel it animale",
+                "stone prefLabel - stone",
+                "animal prefLabel en animal");
+
+        assertEquals(Arrays.asList("", "en", "it"), new ArrayList<>(thesaurus.getLanguages()));
+        Map<String, String> de = names(thesaurus, "de");
+        assertEquals("", de.get("animal"));
+        assertEquals("", de.get("stone"));
+    }
+
+    /**
+     * Loads a thesaurus given as lines of concept, label property, language or - for none, and label.
+     */
+    private MultilingualContext load(String... labels) throws IOException, ContextLoaderException {
+        File file = folder.newFile("labels.rdf");
+        try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+            out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            out.println("<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\"");
+            out.println("         xmlns:owl=\"http://www.w3.org/2002/07/owl#\"");
+            out.println("         xmlns:skos=\"http://www.w3.org/2004/02/skos/core#\">");
+            out.println("    <owl:DatatypeProperty rdf:about=\"http://www.w3.org/2004/02/skos/core#prefLabel\"/>");
+            out.println("    <owl:DatatypeProperty rdf:about=\"http://www.w3.org/2004/02/skos/core#altLabel\"/>");
+            for (String label : labels) {
+                String[] l = label.split(" ");
+                String language = "-".equals(l[2]) ? "" : " xml:lang=\"" + l[2] + "\"";
+                out.println("    <skos:Concept rdf:about=\"" + NS + l[0] + "\">");
+                out.println("        <skos:" + l[1] + language + ">" + l[3] + "</skos:" + l[1] + ">");
+                out.println("    </skos:Concept>");
+            }
+            out.println("</rdf:RDF>");
+        }
+        return new SKOSContextLoader().loadMultilingualContext(file.getPath());
+    }
+
+    /**
+     * Returns the name of each concept in the context in the language.
+     */
+    private static Map<String, String> names(MultilingualContext thesaurus, String language) throws ContextLoaderException {
+        IContext context = thesaurus.getContext(language);
+        Map<String, String> result = new HashMap<>();
+        for (Iterator<INode> i = context.nodeIterator(); i.hasNext(); ) {
+            INode node = i.next();
+            String provenance = node.nodeData().getProvenance();
+            if (null != provenance) {
+                result.put(provenance.substring(NS.length()), node.nodeData().getName());
+            }
+        }
+        return result;
+    }
+}
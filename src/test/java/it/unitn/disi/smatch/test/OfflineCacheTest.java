@@ -0,0 +1,162 @@
+package it.unitn.disi.smatch.test;
+
+import it.unitn.disi.smatch.CLI;
+import it.unitn.disi.smatch.IMatchManager;
+import it.unitn.disi.smatch.OfflineCache;
+import it.unitn.disi.smatch.SMatchException;
+import it.unitn.disi.smatch.data.trees.IContext;
+import it.unitn.disi.smatch.data.trees.INode;
+import it.unitn.disi.smatch.loaders.context.BinaryContextLoader;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.context.ApplicationContext;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the offline cache returns the same preprocessed context as preprocessing does, and only for the same
+ * input.
+ *
+ * @author agent
+ */
+public class OfflineCacheTest {
+
+    private static final String SOURCE = "src/main/resources/test-data/cw/c.xml";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testMissThenHit() throws SMatchException {
+        ApplicationContext config = CLI.loadConfig(null, null);
+        IMatchManager mm = config.getBean(CLI.MATCH_MANAGER_BEAN, IMatchManager.class);
+        OfflineCache cache = new OfflineCache(folder.getRoot().getPath(), CLI.getLinguisticOracle(config));
+
+        IContext miss = cache.offline(mm, null, load(mm));
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        IContext hit = cache.offline(mm, null, load(mm));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        IContext preprocessed = load(mm);
+        mm.offline(preprocessed);
+        assertSameNodes(preprocessed, miss);
+        assertSameNodes(preprocessed, hit);
+    }
+
+    @Test
+    public void testDifferentNodeDataMiss() throws SMatchException {
+        ApplicationContext config = CLI.loadConfig(null, null);
+        IMatchManager mm = config.getBean(CLI.MATCH_MANAGER_BEAN, IMatchManager.class);
+        OfflineCache cache = new OfflineCache(folder.getRoot().getPath(), CLI.getLinguisticOracle(config));
+
+        cache.offline(mm, null, load(mm));
+
+        // same names, other ids
+        IContext renumbered = load(mm);
+        Iterator<INode> i = renumbered.nodeIterator();
+        while (i.hasNext()) {
+            INode node = i.next();
+            node.nodeData().setId("x" + node.nodeData().getId());
+        }
+        IContext result = cache.offline(mm, null, renumbered);
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals("x", result.getRoot().nodeData().getId().substring(0, 1));
+
+        // same names, other provenance
+        IContext other = load(mm);
+        other.getRoot().nodeData().setProvenance("other");
+        result = cache.offline(mm, null, other);
+        assertEquals(0, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        assertEquals("other", result.getRoot().nodeData().getProvenance());
+    }
+
+    @Test
+    public void testUnreadableEntryDiscarded() throws SMatchException, IOException {
+        ApplicationContext config = CLI.loadConfig(null, null);
+        IMatchManager mm = config.getBean(CLI.MATCH_MANAGER_BEAN, IMatchManager.class);
+        OfflineCache cache = new OfflineCache(folder.getRoot().getPath(), CLI.getLinguisticOracle(config));
+
+        cache.offline(mm, null, load(mm));
+        File[] entries = folder.getRoot().listFiles();
+        assertEquals(1, entries.length);
+        try (FileOutputStream out = new FileOutputStream(entries[0])) {
+            out.write("not a context".getBytes(StandardCharsets.UTF_8));
+        }
+
+        IContext result = cache.offline(mm, null, load(mm));
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        IContext preprocessed = load(mm);
+        mm.offline(preprocessed);
+        assertSameNodes(preprocessed, result);
+
+        // the entry is stored again
+        cache.offline(mm, null, load(mm));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testEntriesAreBinary() throws SMatchException, IOException {
+        ApplicationContext config = CLI.loadConfig(null, null);
+        IMatchManager mm = config.getBean(CLI.MATCH_MANAGER_BEAN, IMatchManager.class);
+        OfflineCache cache = new OfflineCache(folder.getRoot().getPath(), CLI.getLinguisticOracle(config));
+
+        // the default config renders contexts as XML, the entries are binary anyway
+        IContext miss = cache.offline(mm, null, load(mm));
+        File[] entries = folder.getRoot().listFiles();
+        assertEquals(1, entries.length);
+        try (DataInputStream in = new DataInputStream(new FileInputStream(entries[0]))) {
+            assertEquals(BinaryContextLoader.MAGIC, in.readInt());
+        }
+
+        // senses are restored with the oracle of the config
+        IContext hit = cache.offline(mm, null, load(mm));
+        assertEquals(1, cache.getHits());
+        Iterator<INode> m = miss.nodeIterator();
+        Iterator<INode> h = hit.nodeIterator();
+        while (m.hasNext()) {
+            INode mn = m.next();
+            INode hn = h.next();
+            assertEquals(mn.nodeData().getProvenance(), hn.nodeData().getProvenance());
+            assertEquals(mn.nodeData().getConcepts().size(), hn.nodeData().getConcepts().size());
+            for (int i = 0; i < mn.nodeData().getConcepts().size(); i++) {
+                assertEquals(mn.nodeData().getConcepts().get(i).getSenses().size(), hn.nodeData().getConcepts().get(i).getSenses().size());
+            }
+        }
+    }
+
+    private static IContext load(IMatchManager mm) throws SMatchException {
+        return (IContext) mm.loadContext(SOURCE);
+    }
+
+    private static void assertSameNodes(IContext expected, IContext actual) {
+        assertEquals(expected.nodesCount(), actual.nodesCount());
+        Iterator<INode> e = expected.nodeIterator();
+        Iterator<INode> a = actual.nodeIterator();
+        while (e.hasNext()) {
+            INode en = e.next();
+            INode an = a.next();
+            assertEquals(en.nodeData().getName(), an.nodeData().getName());
+            assertEquals(en.nodeData().getId(), an.nodeData().getId());
+            assertEquals(en.nodeData().getLabelFormula(), an.nodeData().getLabelFormula());
+            assertEquals(en.nodeData().getNodeFormula(), an.nodeData().getNodeFormula());
+            assertEquals(en.getChildCount(), an.getChildCount());
+        }
+        assertTrue(!a.hasNext());
+    }
+}
@@ -0,0 +1,455 @@
+package it.unitn.disi.smatch.test;
+
+import it.unitn.disi.common.DISIException;
+import it.unitn.disi.smatch.CLI;
+import it.unitn.disi.smatch.IMatchManager;
+import it.unitn.disi.smatch.classifiers.CNFConverter;
+import it.unitn.disi.smatch.data.trees.IContext;
+import it.unitn.disi.smatch.data.trees.INode;
+import it.unitn.disi.smatch.deciders.BudgetFallbackSolver;
+import it.unitn.disi.smatch.deciders.CanonicalizingSolver;
+import it.unitn.disi.smatch.deciders.DimacsParser;
+import it.unitn.disi.smatch.deciders.ISATSolver;
+import it.unitn.disi.smatch.deciders.MiniSAT;
+import it.unitn.disi.smatch.deciders.PersistentCachingSolver;
+import it.unitn.disi.smatch.deciders.PortfolioSATSolver;
+import it.unitn.disi.smatch.deciders.PrefixCachingMiniSAT;
+import it.unitn.disi.smatch.deciders.SATBudgetExceededException;
+import it.unitn.disi.smatch.deciders.SATSolverException;
+import org.apache.log4j.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opensat.ContradictionException;
+import org.opensat.Dimacs;
+import org.opensat.ISolver;
+import org.opensat.minisat.SolverFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.LineNumberReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the solvers on random checks sharing leading clauses, as node matching does. The expected results come
+ * from the original MiniSAT path, which parses DIMACS with org.opensat and does not share code with the deciders.
+ *
+ * @author agent
+ */
+public class SATSolverTest {
+
+    public static final Logger log = Logger.getLogger(SATSolverTest.class);
+
+    private static final int CHECKS = 2000;
+
+    private static final ISATSolver REFERENCE = new DimacsMiniSAT();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPrefixCachingMiniSAT() throws SATSolverException {
+        assertSameAsReference(new PrefixCachingMiniSAT());
+    }
+
+    @Test
+    public void testPortfolioSATSolver() throws SATSolverException {
+        PortfolioSATSolver solver = new PortfolioSATSolver();
+        try {
+            assertSameAsReference(solver);
+            long wins = 0;
+            long answers = 0;
+            for (int i = 0; i < solver.getSolvers().size(); i++) {
+                wins += solver.getWins(i);
+                for (long count : solver.getLatencyHistogram(i)) {
+                    answers += count;
+                }
+            }
+            assertEquals(CHECKS, wins);
+            assertEquals(CHECKS, answers);
+            solver.logStatistics();
+        } finally {
+            solver.shutdown();
+        }
+    }
+
+    @Test
+    public void testPortfolioCancelsLosers() throws SATSolverException {
+        // MiniSAT needs minutes to refute the pigeonhole formula, the other solver knows the answer
+        final String pigeonhole = pigeonhole(12);
+        ISATSolver oracle = new ISATSolver() {
+            public boolean isSatisfiable(String input) {
+                return !pigeonhole.equals(input);
+            }
+        };
+        PortfolioSATSolver solver = new PortfolioSATSolver(Arrays.asList(oracle, new MiniSAT()), 2);
+        try {
+            long start = System.currentTimeMillis();
+            // with a loser keeping its thread, the third check would wait for it
+            for (int i = 0; i < 5; i++) {
+                assertFalse(solver.isSatisfiable(pigeonhole));
+            }
+            assertTrue(System.currentTimeMillis() - start < 10000);
+            assertEquals(5, solver.getWins(0));
+        } finally {
+            solver.shutdown();
+        }
+    }
+
+    @Test
+    public void testMiniSATClauses() throws SATSolverException {
+        MiniSAT solver = new MiniSAT();
+        Random random = new Random(7);
+        for (int i = 0; i < CHECKS; i++) {
+            String input = dimacs(clauses(random, 5 + random.nextInt(40), 1 + random.nextInt(120)));
+            int[][] clauses = DimacsParser.parse(input);
+            int[] offsets = new int[clauses.length + 1];
+            int[] literals = new int[3 * clauses.length];
+            for (int c = 0; c < clauses.length; c++) {
+                offsets[c + 1] = offsets[c] + clauses[c].length;
+                System.arraycopy(clauses[c], 0, literals, offsets[c], clauses[c].length);
+            }
+            boolean expected = REFERENCE.isSatisfiable(input);
+            assertEquals(input, expected, solver.isSatisfiable(input));
+            assertEquals(input, expected, solver.isSatisfiable(clauses));
+            assertEquals(input, expected, solver.isSatisfiable(literals, offsets, clauses.length));
+        }
+    }
+
+    @Test
+    public void testMiniSATBudget() throws SATSolverException {
+        assertSameAsReference(new MiniSAT(60000, 100000000L));
+
+        MiniSAT solver = new MiniSAT(0, 1);
+        BudgetFallbackSolver fallback = new BudgetFallbackSolver(solver);
+        int exceeded = 0;
+        for (String input : hardChecks()) {
+            try {
+                assertEquals(input, REFERENCE.isSatisfiable(input), solver.isSatisfiable(input));
+            } catch (SATBudgetExceededException e) {
+                exceeded++;
+                assertTrue(fallback.isSatisfiable(input));
+            }
+        }
+        assertTrue(0 < exceeded);
+        assertEquals(exceeded, fallback.getTimedOut());
+        assertEquals(2 * exceeded, solver.getTimedOut());
+
+        // the clock is looked at during the search
+        try {
+            new MiniSAT(1, 0).isSatisfiable(dimacs(clauses(new Random(3), 400, 1704, 3)));
+            fail("A large check finished within 1 ms");
+        } catch (SATBudgetExceededException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testMiniSATInterrupted() throws SATSolverException {
+        String input = dimacs(clauses(new Random(5), 400, 1704, 3));
+        Thread.currentThread().interrupt();
+        try {
+            new MiniSAT().isSatisfiable(input);
+            fail("An interrupted check finished");
+        } catch (SATBudgetExceededException e) {
+            fail("An interrupted check exceeded the budget");
+        } catch (SATSolverException e) {
+            // expected
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    public void testPersistentCachingSolver() throws SATSolverException {
+        String fileName = new File(folder.getRoot(), "cache/sat.cache").getPath();
+        PersistentCachingSolver solver = new PersistentCachingSolver(new MiniSAT(), fileName, 100000);
+        assertSameAsReference(solver);
+        solver.close();
+        assertEquals(CHECKS, solver.getHits() + solver.getMisses());
+
+        // another process finds the results, also with the clauses reordered
+        PersistentCachingSolver reopened = new PersistentCachingSolver(new MiniSAT(), fileName, 100000);
+        assertSameAsReference(reopened);
+        assertEquals(0, reopened.getMisses());
+        Random random = new Random(7);
+        String shared = clauses(random, 30, 40);
+        random.nextInt(100);
+        List<String> lines = new ArrayList<>();
+        Collections.addAll(lines, (shared + clauses(random, 30 + random.nextInt(20), random.nextInt(60))).split("\n"));
+        Collections.shuffle(lines, random);
+        StringBuilder shuffled = new StringBuilder();
+        for (String line : lines) {
+            shuffled.append(line).append('\n');
+        }
+        reopened.isSatisfiable(dimacs(shuffled.toString()));
+        assertEquals(0, reopened.getMisses());
+
+        // the file is compacted to the entries kept
+        new PersistentCachingSolver(new MiniSAT(), fileName, 10).close();
+        assertTrue(new File(fileName).length() < 1000);
+    }
+
+    @Test
+    public void testCanonicalizingSolverBudget() throws SATSolverException {
+        CanonicalizingSolver solver = new CanonicalizingSolver(new MiniSAT(0, 1));
+        List<String> exceeded = new ArrayList<>();
+        for (String input : hardChecks()) {
+            try {
+                solver.isSatisfiable(input);
+            } catch (SATBudgetExceededException e) {
+                exceeded.add(input);
+            }
+        }
+        assertFalse(exceeded.isEmpty());
+
+        // the checks over the budget are misses again
+        long misses = solver.getMisses();
+        for (String input : exceeded) {
+            try {
+                solver.isSatisfiable(input);
+                fail(input);
+            } catch (SATBudgetExceededException e) {
+                // expected
+            }
+        }
+        assertEquals(misses + exceeded.size(), solver.getMisses());
+    }
+
+    @Test
+    public void testPersistentCachingSolverBudget() throws SATSolverException {
+        String fileName = new File(folder.getRoot(), "cache/sat.cache").getPath();
+        PersistentCachingSolver solver = new PersistentCachingSolver(new MiniSAT(0, 1), fileName, 100000);
+        List<String> inputs = hardChecks();
+        int exceeded = 0;
+        for (String input : inputs) {
+            try {
+                solver.isSatisfiable(input);
+            } catch (SATBudgetExceededException e) {
+                exceeded++;
+            }
+        }
+        solver.close();
+        assertTrue(0 < exceeded);
+
+        // only the answered checks are found, the rest is solved again
+        PersistentCachingSolver reopened = new PersistentCachingSolver(new MiniSAT(), fileName, 100000);
+        for (String input : inputs) {
+            assertEquals(input, REFERENCE.isSatisfiable(input), reopened.isSatisfiable(input));
+        }
+        assertEquals(exceeded, reopened.getMisses());
+        reopened.close();
+    }
+
+    @Test
+    public void testCanonicalizingSolver() throws SATSolverException {
+        assertSameAsReference(new CanonicalizingSolver());
+
+        // renumbered and reordered copies have the same canonical form
+        Random random = new Random(13);
+        int[][] clauses = DimacsParser.parse(clauses(random, 20, 30));
+        int[][] copy = new int[clauses.length][];
+        for (int i = 0; i < clauses.length; i++) {
+            copy[clauses.length - 1 - i] = new int[clauses[i].length];
+            for (int j = 0; j < clauses[i].length; j++) {
+                int literal = clauses[i][j];
+                copy[clauses.length - 1 - i][j] = 0 < literal ? 21 - literal : -21 - literal;
+            }
+        }
+        CanonicalizingSolver solver = new CanonicalizingSolver();
+        solver.isSatisfiable(CanonicalizingSolver.toDimacs(clauses));
+        solver.isSatisfiable(CanonicalizingSolver.toDimacs(copy));
+        assertEquals(1, solver.getHits());
+    }
+
+    @Test
+    public void testCanonicalizingSolverBound() throws SATSolverException {
+        CanonicalizingSolver solver = new CanonicalizingSolver(new MiniSAT(), 2);
+        String first = dimacs("1 2 0\n");
+        String second = dimacs("1 2 0\n-1 2 0\n");
+        String third = dimacs("1 2 0\n-1 2 0\n1 -2 0\n");
+        solver.isSatisfiable(first);
+        solver.isSatisfiable(second);
+        solver.isSatisfiable(third);
+        assertEquals(3, solver.getMisses());
+        // the least recently used check is evicted
+        solver.isSatisfiable(third);
+        solver.isSatisfiable(first);
+        assertEquals(1, solver.getHits());
+        assertEquals(4, solver.getMisses());
+    }
+
+    @Test
+    public void testCanonicalizingSolverHitRate() throws DISIException {
+        IMatchManager mm = CLI.createMatchManager(null);
+        IContext source = (IContext) mm.loadContext("src/main/resources/test-data/cw/c.xml");
+        IContext target = (IContext) mm.loadContext("src/main/resources/test-data/cw/w.xml");
+        mm.offline(source);
+        mm.offline(target);
+
+        CanonicalizingSolver solver = new CanonicalizingSolver();
+        Set<String> texts = new HashSet<>();
+        int checks = 0;
+        int textHits = 0;
+        for (Iterator<INode> i = source.nodeIterator(); i.hasNext(); ) {
+            String sourceFormula = i.next().nodeData().getNodeFormula();
+            if (null == sourceFormula || sourceFormula.trim().isEmpty()) {
+                continue;
+            }
+            for (Iterator<INode> j = target.nodeIterator(); j.hasNext(); ) {
+                String targetFormula = j.next().nodeData().getNodeFormula();
+                if (null == targetFormula || targetFormula.trim().isEmpty()) {
+                    continue;
+                }
+                // the less generality check, with the atoms numbered as they are met
+                String input = toDimacs(CNFConverter.toCNF("(" + sourceFormula + ") & ~(" + targetFormula + ")"));
+                checks++;
+                if (!texts.add(input)) {
+                    textHits++;
+                }
+                assertEquals(input, REFERENCE.isSatisfiable(input), solver.isSatisfiable(input));
+            }
+        }
+        assertTrue(textHits <= solver.getHits());
+        log.info("Checks: " + checks);
+        log.info("Text cache hit rate: " + 100 * textHits / checks + "%");
+        log.info("Canonical cache hit rate: " + 100 * solver.getHits() / checks + "%");
+    }
+
+    /**
+     * The MiniSAT decider as it was before the direct clause entry points and budgets: DIMACS is parsed by
+     * org.opensat and the search runs to the end.
+     */
+    private static class DimacsMiniSAT implements ISATSolver {
+
+        public boolean isSatisfiable(String input) throws SATSolverException {
+            ISolver solver = SolverFactory.newMiniLearning();
+            try {
+                LineNumberReader lnrCNF = new LineNumberReader(new BufferedReader(new StringReader(input)));
+                Dimacs parser = new Dimacs();
+                parser.parseInstance(lnrCNF, solver);
+                return solver.solve();
+            } catch (ContradictionException e) {
+                return false;
+            } catch (Exception e) {
+                throw new SATSolverException(e.getClass().getSimpleName() + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Converts a formula in CNF into DIMACS, numbering the atoms in the order they are met.
+     */
+    private static String toDimacs(String cnf) {
+        Map<String, Integer> numbers = new HashMap<>();
+        StringBuilder result = new StringBuilder();
+        for (String clause : cnf.split("&")) {
+            for (String literal : clause.replace("(", "").replace(")", "").split("\\|")) {
+                literal = literal.trim();
+                boolean negated = literal.startsWith("~");
+                String atom = negated ? literal.substring(1).trim() : literal;
+                Integer number = numbers.get(atom);
+                if (null == number) {
+                    number = numbers.size() + 1;
+                    numbers.put(atom, number);
+                }
+                result.append(negated ? -number : number).append(' ');
+            }
+            result.append("0\n");
+        }
+        return dimacs(result.toString());
+    }
+
+    private static void assertSameAsReference(ISATSolver solver) throws SATSolverException {
+        Random random = new Random(7);
+        String shared = clauses(random, 30, 40);
+        for (int i = 0; i < CHECKS; i++) {
+            if (0 == random.nextInt(100)) {
+                shared = clauses(random, 30, 40);
+            }
+            String input = dimacs(shared + clauses(random, 30 + random.nextInt(20), random.nextInt(60)));
+            assertEquals(input, REFERENCE.isSatisfiable(input), solver.isSatisfiable(input));
+        }
+    }
+
+    /**
+     * Generates random 3-SAT checks near the threshold, which need more than one conflict.
+     */
+    private static List<String> hardChecks() {
+        Random random = new Random(5);
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            result.add(dimacs(clauses(random, 120, 511, 3)));
+        }
+        return result;
+    }
+
+    /**
+     * Generates the formula saying that n pigeons sit in n - 1 holes, one per hole, which is unsatisfiable.
+     */
+    private static String pigeonhole(int n) {
+        StringBuilder result = new StringBuilder();
+        int holes = n - 1;
+        for (int p = 0; p < n; p++) {
+            for (int h = 0; h < holes; h++) {
+                result.append(p * holes + h + 1).append(' ');
+            }
+            result.append("0\n");
+        }
+        for (int h = 0; h < holes; h++) {
+            for (int p = 0; p < n; p++) {
+                for (int q = p + 1; q < n; q++) {
+                    result.append(-(p * holes + h + 1)).append(' ').append(-(q * holes + h + 1)).append(" 0\n");
+                }
+            }
+        }
+        return dimacs(result.toString());
+    }
+
+    private static String clauses(Random random, int variables, int count) {
+        return clauses(random, variables, count, 0);
+    }
+
+    /**
+     * Generates random clauses of the given length, or of 1 to 3 literals if the length is 0.
+     */
+    private static String clauses(Random random, int variables, int count, int clauseLength) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            int length = 0 == clauseLength ? 1 + random.nextInt(3) : clauseLength;
+            for (int j = 0; j < length; j++) {
+                int variable = 1 + random.nextInt(variables);
+                result.append(random.nextBoolean() ? variable : -variable).append(' ');
+            }
+            result.append("0\n");
+        }
+        return result.toString();
+    }
+
+    private static String dimacs(String clauses) {
+        int variables = 0;
+        int count = 0;
+        for (String line : clauses.split("\n")) {
+            count++;
+            for (String literal : line.split(" ")) {
+                variables = Math.max(variables, Math.abs(Integer.parseInt(literal)));
+            }
+        }
+        return "p cnf " + variables + " " + count + "\n" + clauses;
+    }
+}
@@ -0,0 +1,214 @@
+package it.unitn.disi.smatch.test;
+
+import it.unitn.disi.smatch.classifiers.CNFContextClassifierNative;
+import it.unitn.disi.smatch.classifiers.ContextClassifierException;
+import it.unitn.disi.smatch.data.trees.IContext;
+import it.unitn.disi.smatch.data.trees.INode;
+import it.unitn.disi.smatch.loaders.context.ContextLoaderException;
+import it.unitn.disi.smatch.loaders.context.MultilingualContext;
+import it.unitn.disi.smatch.loaders.context.ReferenceNodes;
+import it.unitn.disi.smatch.loaders.context.SKOSContextLoader;
+import it.unitn.disi.smatch.loaders.context.StreamingSKOSContextLoader;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the contexts loaded from a SKOS thesaurus in different ways have the same labels, parents, roots
+ * and reference nodes, that the cycles of BTs and NTs are broken, that the reference nodes share the subtrees
+ * of their targets once classified and that the streaming loader does not read external entities.
+ *
+ * @author agent
+ */
+public class SKOSContextLoaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String THESAURUS = "src/main/resources/test-data/skos/thesaurus.rdf";
+
+    @Test
+    public void testMultilingualContext() throws ContextLoaderException {
+        // the parent taken of several ones depends on the order the concepts come from the SKOS API,
+        // therefore without multiple parents only the labels compare
+        for (boolean multipleParents : new boolean[]{false, true}) {
+            MultilingualContext thesaurus = new SKOSContextLoader("", true, multipleParents).loadMultilingualContext(THESAURUS);
+            assertEquals(Arrays.asList("", "en", "it"), new ArrayList<>(thesaurus.getLanguages()));
+            for (String language : new String[]{"en", "it"}) {
+                IContext expected = new SKOSContextLoader(language, true, multipleParents, true).loadContext(THESAURUS);
+                assertEquals(language, nodes(expected, multipleParents), nodes(thesaurus.getContext(language), multipleParents));
+            }
+        }
+
+        MultilingualContext thesaurus = new SKOSContextLoader().loadMultilingualContext(THESAURUS);
+        List<String> it = nodes(thesaurus.getContext("it"), false);
+        // the alternative label is taken without a preferred one, the concept is unlabeled without both
+        assertTrue(it.toString(), it.contains("animale domestico|http://example.org/thesaurus#pet"));
+        assertTrue(it.toString(), it.contains("|http://example.org/thesaurus#stone"));
+        List<String> any = nodes(thesaurus.getContext(""), false);
+        assertTrue(any.toString(), any.contains("dog|http://example.org/thesaurus#dog") || any.contains("cane|http://example.org/thesaurus#dog"));
+        assertTrue(any.toString(), any.contains("pet|http://example.org/thesaurus#pet"));
+        assertTrue(any.toString(), any.contains("stone|http://example.org/thesaurus#stone"));
+    }
+
+    @Test
+    public void testCycles() throws ContextLoaderException {
+        // r - a - b - c - a, stated with BTs only and with NTs only
+        for (String fileName : new String[]{"src/main/resources/test-data/skos/cycle-bt.rdf", "src/main/resources/test-data/skos/cycle-nt.rdf"}) {
+            for (boolean singlePass : new boolean[]{false, true}) {
+                for (boolean multipleParents : new boolean[]{false, true}) {
+                    IContext context = new SKOSContextLoader("", true, multipleParents, singlePass).loadContext(fileName);
+                    String message = fileName + ", singlePass " + singlePass + ", multipleParents " + multipleParents;
+                    Map<INode, INode> references = ReferenceNodes.getReferences(context);
+                    List<String> concepts = new ArrayList<>();
+                    for (Iterator<INode> i = context.nodeIterator(); i.hasNext(); ) {
+                        INode node = i.next();
+                        if (references.containsKey(node)) {
+                            // a reference under a descendant of its target would make a cycle again
+                            INode target = references.get(node);
+                            for (Iterator<INode> a = node.ancestorsIterator(); a.hasNext(); ) {
+                                assertNotSame(message, target, a.next());
+                            }
+                        } else if (null != node.nodeData().getProvenance()) {
+                            concepts.add(node.nodeData().getName());
+                        }
+                    }
+                    Collections.sort(concepts);
+                    // the edge closing the cycle is dropped, each concept is in the tree once
+                    assertEquals(message, Arrays.asList("a", "b", "c", "r"), concepts);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testReferencesShareSubtree() throws IOException, ContextLoaderException, ContextClassifierException {
+        File file = folder.newFile("poly.nt");
+        try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+            // r - a - c - d, r - b - c
+            for (String[] edge : new String[][]{{"a", "r"}, {"b", "r"}, {"c", "a"}, {"c", "b"}, {"d", "c"}}) {
+                out.println("<http://example.org/poly#" + edge[0] + "> <http://www.w3.org/2004/02/skos/core#broader> <http://example.org/poly#" + edge[1] + "> .");
+            }
+            for (String concept : new String[]{"r", "a", "b", "c", "d"}) {
+                out.println("<http://example.org/poly#" + concept + "> <http://www.w3.org/2004/02/skos/core#prefLabel> \"" + concept + "\" .");
+            }
+        }
+        IContext context = new StreamingSKOSContextLoader("", true).loadContext(file.getPath());
+        Map<INode, INode> references = ReferenceNodes.getReferences(context);
+        assertEquals(1, references.size());
+        INode reference = references.keySet().iterator().next();
+        assertEquals(0, reference.getChildCount());
+        INode target = references.get(reference);
+        assertEquals("c", target.nodeData().getName());
+        assertNotSame(target.getParent(), reference.getParent());
+
+        // the formulas of one concept per label, as a preprocessor gives them
+        int id = 0;
+        for (Iterator<INode> i = context.nodeIterator(); i.hasNext(); ) {
+            INode node = i.next();
+            node.nodeData().setId("n" + id++);
+            node.nodeData().addConcept(node.nodeData().createConcept());
+            node.nodeData().setLabelFormula(node.nodeData().getId() + ".1");
+        }
+        int count = context.nodesCount();
+        new CNFContextClassifierNative().classify(context);
+        assertEquals(count + 1, context.nodesCount());
+        assertTrue(ReferenceNodes.getReferences(context).isEmpty());
+
+        INode d = target.getChildAt(0);
+        assertEquals(1, reference.getChildCount());
+        INode copy = reference.getChildAt(0);
+        assertEquals("d", copy.nodeData().getName());
+        assertEquals(d.nodeData().getProvenance(), copy.nodeData().getProvenance());
+        assertSame(d.nodeData().getConcepts().get(0), copy.nodeData().getConcepts().get(0));
+        assertFalse(d.nodeData().getId().equals(copy.nodeData().getId()));
+        assertEquals(copy.nodeData().getId() + ".1", copy.nodeData().getLabelFormula());
+        // the node formulas follow the paths through a and through b
+        String a = target.getParent().nodeData().getId() + ".1";
+        String b = reference.getParent().nodeData().getId() + ".1";
+        assertTrue(d.nodeData().getNodeFormula(), d.nodeData().getNodeFormula().contains(a));
+        assertFalse(d.nodeData().getNodeFormula(), d.nodeData().getNodeFormula().contains(b));
+        assertTrue(copy.nodeData().getNodeFormula(), copy.nodeData().getNodeFormula().contains(b));
+        assertFalse(copy.nodeData().getNodeFormula(), copy.nodeData().getNodeFormula().contains(a));
+    }
+
+    @Test
+    public void testStreamingSameAsSKOSAPI() throws ContextLoaderException {
+        String nTriples = "src/main/resources/test-data/skos/thesaurus.nt";
+        for (boolean multipleParents : new boolean[]{false, true}) {
+            for (String language : new String[]{"en", "it"}) {
+                IContext expected = new SKOSContextLoader(language, true, multipleParents, true).loadContext(THESAURUS);
+                for (String fileName : new String[]{THESAURUS, nTriples}) {
+                    IContext actual = new StreamingSKOSContextLoader(language, multipleParents).loadContext(fileName);
+                    assertEquals(fileName + ", " + language, nodes(expected, multipleParents), nodes(actual, multipleParents));
+                }
+            }
+            // both formats list the triples in the same order, so even the parents chosen are the same
+            for (String language : new String[]{"", "en", "it"}) {
+                assertEquals(language, nodes(new StreamingSKOSContextLoader(language, multipleParents).loadContext(THESAURUS), true),
+                        nodes(new StreamingSKOSContextLoader(language, multipleParents).loadContext(nTriples), true));
+            }
+        }
+    }
+
+    @Test
+    public void testStreamingExternalEntity() throws IOException, ContextLoaderException {
+        File secret = folder.newFile("secret.txt");
+        try (PrintWriter out = new PrintWriter(secret, "UTF-8")) {
+            out.print("secret");
+        }
+        File file = folder.newFile("entity.rdf");
+        try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+            out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            out.println("<!DOCTYPE rdf:RDF [");
+            out.println("    <!ENTITY skos \"http://www.w3.org/2004/02/skos/core#\">");
+            out.println("    <!ENTITY secret SYSTEM \"" + secret.toURI() + "\">");
+            out.println("]>");
+            out.println("<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\" xmlns:skos=\"&skos;\">");
+            out.println("    <skos:Concept rdf:about=\"http://example.org/entity#a\">");
+            out.println("        <skos:prefLabel>a&secret;</skos:prefLabel>");
+            out.println("    </skos:Concept>");
+            out.println("</rdf:RDF>");
+        }
+
+        IContext context = new StreamingSKOSContextLoader().loadContext(file.getPath());
+        // the internal entity is expanded, the external one is not read
+        assertEquals("http://example.org/entity#a", context.getRoot().nodeData().getProvenance());
+        assertEquals("a", context.getRoot().nodeData().getName());
+    }
+
+    /**
+     * Lists the name and the provenance of each node, with the provenance of the parent if asked, in a fixed order.
+     * With multiple parents each concept is listed under each of its parents, whichever of them has
+     * the reference node.
+     */
+    static List<String> nodes(IContext context, boolean parents) {
+        List<String> result = new ArrayList<>();
+        for (Iterator<INode> i = context.nodeIterator(); i.hasNext(); ) {
+            INode node = i.next();
+            String line = node.nodeData().getName() + "|" + node.nodeData().getProvenance();
+            if (parents && node.hasParent()) {
+                line = line + "|" + node.getParent().nodeData().getProvenance();
+            }
+            result.add(line);
+        }
+        Collections.sort(result);
+        return result;
+    }
+}
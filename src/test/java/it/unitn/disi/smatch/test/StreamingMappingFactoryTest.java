@@ -0,0 +1,142 @@
+package it.unitn.disi.smatch.test;
+
+import it.unitn.disi.common.DISIException;
+import it.unitn.disi.smatch.CLI;
+import it.unitn.disi.smatch.data.mappings.IContextMapping;
+import it.unitn.disi.smatch.data.mappings.IMappingElement;
+import it.unitn.disi.smatch.data.mappings.StreamingMappingFactory;
+import it.unitn.disi.smatch.data.trees.Context;
+import it.unitn.disi.smatch.data.trees.IContext;
+import it.unitn.disi.smatch.data.trees.INode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that streamed mappings contain the same links as the mappings kept in memory.
+ *
+ * @author agent
+ */
+public class StreamingMappingFactoryTest {
+
+    private static final String SOURCE = "src/main/resources/test-data/cw/c.xml";
+    private static final String TARGET = "src/main/resources/test-data/cw/w.xml";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSameAsHashMapping() throws ClassNotFoundException, IOException, DISIException {
+        File config = folder.newFile("s-match-streaming.xml");
+        try (PrintWriter out = new PrintWriter(config, "UTF-8")) {
+            out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            out.println("<beans xmlns=\"http://www.springframework.org/schema/beans\"");
+            out.println("       xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"");
+            out.println("       xsi:schemaLocation=\"http://www.springframework.org/schema/beans http://www.springframework.org/schema/beans/spring-beans-4.1.xsd\">");
+            out.println("    <import resource=\"classpath:" + CLI.DEFAULT_CONFIG_FILE_NAME.substring(1) + "\"/>");
+            out.println("    <bean id=\"mappingFactory\" class=\"" + StreamingMappingFactory.class.getName() + "\">");
+            out.println("        <constructor-arg name=\"queueSize\" value=\"4\"/>");
+            out.println("    </bean>");
+            out.println("</beans>");
+        }
+
+        File inMemory = new File(folder.getRoot(), "in-memory.txt");
+        CLI.main(new String[]{CLI.CMD_ALL_STEPS, SOURCE, TARGET, inMemory.getAbsolutePath()});
+        File streamed = new File(folder.getRoot(), "streamed.txt");
+        CLI.main(new String[]{CLI.CONFIG_FILE_CMD_LINE_KEY + config.getAbsolutePath(),
+                CLI.CMD_ALL_STEPS, SOURCE, TARGET, streamed.getAbsolutePath()});
+
+        List<String> expected = readSorted(inMemory);
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, readSorted(streamed));
+    }
+
+    @Test
+    public void testStreamedLinks() throws IOException {
+        IContext source = new Context();
+        INode s = source.createRoot("Top");
+        INode s1 = s.createChild("Images");
+        INode s2 = s1.createChild("Europe");
+        IContext target = new Context();
+        INode t = target.createRoot("Top");
+        INode t1 = t.createChild("Europe");
+
+        // a queue smaller than the mapping makes the matcher wait for the writer
+        StreamingMappingFactory factory = new StreamingMappingFactory(1);
+        File file = new File(folder.getRoot(), "streamed.txt");
+        factory.open(file.getPath());
+        IContextMapping<INode> mapping = factory.getContextMappingInstance(source, target);
+        mapping.setRelation(s, t, IMappingElement.EQUIVALENCE);
+        mapping.setRelation(s1, t1, IMappingElement.IDK);
+        mapping.setRelation(s2, t1, IMappingElement.EQUIVALENCE);
+        mapping.setRelation(s1, t, IMappingElement.LESS_GENERAL);
+        mapping.setRelation(s, t1, IMappingElement.MORE_GENERAL);
+        assertEquals(4, mapping.size());
+        factory.close();
+
+        List<String> expected = new ArrayList<>();
+        expected.add("Top\t" + IMappingElement.EQUIVALENCE + "\tTop");
+        expected.add("Top\\Images\\Europe\t" + IMappingElement.EQUIVALENCE + "\tTop\\Europe");
+        expected.add("Top\\Images\t" + IMappingElement.LESS_GENERAL + "\tTop");
+        expected.add("Top\t" + IMappingElement.MORE_GENERAL + "\tTop\\Europe");
+        assertEquals(expected, Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+
+        // after the session, mappings keep their elements again
+        mapping = factory.getContextMappingInstance(source, target);
+        mapping.setRelation(s, t, IMappingElement.EQUIVALENCE);
+        assertEquals(IMappingElement.EQUIVALENCE, mapping.getRelation(s, t));
+    }
+
+    @Test(timeout = 10000)
+    public void testWriterInterrupted() throws IOException, InterruptedException {
+        IContext source = new Context();
+        INode s = source.createRoot("Top");
+        IContext target = new Context();
+        INode t = target.createRoot("Top");
+
+        StreamingMappingFactory factory = new StreamingMappingFactory(1);
+        factory.open(new File(folder.getRoot(), "interrupted.txt").getPath());
+        Thread writer = null;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if ("mapping-writer".equals(thread.getName())) {
+                writer = thread;
+            }
+        }
+        assertNotNull(writer);
+        writer.interrupt();
+
+        // more elements than the queue holds neither block the matcher nor close()
+        IContextMapping<INode> mapping = factory.getContextMappingInstance(source, target);
+        for (int i = 0; i < 100; i++) {
+            mapping.setRelation(s, t, IMappingElement.EQUIVALENCE);
+        }
+        try {
+            factory.close();
+            fail();
+        } catch (InterruptedIOException e) {
+            // expected
+        }
+        writer.join();
+    }
+
+    private static List<String> readSorted(File file) throws IOException {
+        List<String> result = new ArrayList<>(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+        Collections.sort(result);
+        return result;
+    }
+}